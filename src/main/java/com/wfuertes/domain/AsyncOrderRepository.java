@@ -0,0 +1,9 @@
+package com.wfuertes.domain;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncOrderRepository {
+
+    CompletableFuture<Optional<Order>> findById(String orderId);
+}
@@ -0,0 +1,86 @@
+package com.wfuertes.domain;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs a write that lost an optimistic concurrency race, waiting a random ("full jitter")
+ * exponential backoff between attempts so competing writers spread out.
+ */
+public class ConflictRetry {
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public ConflictRetry(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+    }
+
+    public CompletableFuture<Void> run(Supplier<CompletableFuture<Void>> attempt) {
+        final var result = new CompletableFuture<Void>();
+        attempt(attempt, 1, result);
+        return result;
+    }
+
+    private void attempt(Supplier<CompletableFuture<Void>> attempt, int attempts, CompletableFuture<Void> result) {
+        final CompletableFuture<Void> write;
+        try {
+            write = attempt.get();
+        } catch (Throwable err) {
+            result.completeExceptionally(err);
+            return;
+        }
+
+        write.whenComplete((ignored, err) -> {
+            if (err == null) {
+                result.complete(null);
+                return;
+            }
+
+            final var cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            if (!(cause instanceof OrderVersionConflict)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+
+            conflicts.increment();
+            if (attempts >= maxAttempts) {
+                exhausted.increment();
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries.increment();
+            CompletableFuture
+                    .delayedExecutor(backoffMillis(attempts), TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(attempt, attempts + 1, result));
+        });
+    }
+
+    long backoffMillis(int attempts) {
+        final var ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempts - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public long exhausted() {
+        return exhausted.sum();
+    }
+}
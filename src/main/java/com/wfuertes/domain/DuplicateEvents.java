@@ -0,0 +1,27 @@
+package com.wfuertes.domain;
+
+import java.util.Set;
+
+/**
+ * Some of the events of a write were already applied, so nothing was written.
+ */
+public class DuplicateEvents extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String orderId;
+    private final Set<String> eventIds;
+
+    public DuplicateEvents(String orderId, Set<String> eventIds, Throwable err) {
+        super("Events %s of order %s were already applied".formatted(eventIds, orderId), err);
+        this.orderId = orderId;
+        this.eventIds = Set.copyOf(eventIds);
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public Set<String> getEventIds() {
+        return eventIds;
+    }
+}
@@ -5,6 +5,9 @@ import com.wfuertes.infra.events.OrderCreated;
 import com.wfuertes.infra.events.OrderDiscount;
 import com.wfuertes.infra.events.OrderOffer;
 
+import java.time.Instant;
+import java.util.stream.Stream;
+
 public interface OrderEventRepository {
 
     void save(OrderCreated orderCreated);
@@ -14,4 +17,19 @@ public interface OrderEventRepository {
     void save(OrderOffer orderOffer);
 
     void save(OrderDiscount orderDiscount);
+
+    /**
+     * Streams the events of the order in stream order, fetching pages lazily as the stream is consumed.
+     */
+    Stream<RecordedEvent> loadEvents(String orderId);
+
+    /**
+     * Streams the events of the order positioned after {@code sk}, fetching pages lazily as the stream is consumed.
+     */
+    Stream<RecordedEvent> loadEventsAfter(String orderId, String sk);
+
+    /**
+     * Streams the events of the order recorded at or after {@code since}, fetching pages lazily as the stream is consumed.
+     */
+    Stream<RecordedEvent> loadEventsSince(String orderId, Instant since);
 }
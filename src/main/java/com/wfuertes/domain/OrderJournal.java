@@ -0,0 +1,15 @@
+package com.wfuertes.domain;
+
+import com.wfuertes.infra.events.Order;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface OrderJournal {
+
+    /**
+     * Applies the update to the order snapshot and appends the events behind it as one atomic write. Fails with
+     * {@link DuplicateEvents}, writing nothing, when any of the events was appended before.
+     */
+    CompletableFuture<Void> append(OrderUpdate update, List<? extends Order> events);
+}
@@ -0,0 +1,48 @@
+package com.wfuertes.domain;
+
+import java.util.Optional;
+
+/**
+ * Rebuilds an {@link Order} from its event stream, starting from the latest snapshot and folding the events
+ * recorded after it. Once the folded tail reaches {@code snapshotEvery} events a new snapshot is stored, so
+ * later rehydrations only read a short tail.
+ */
+public class OrderRehydrator {
+
+    private final OrderEventRepository eventRepository;
+    private final OrderSnapshotRepository snapshotRepository;
+    private final int snapshotEvery;
+
+    public OrderRehydrator(OrderEventRepository eventRepository, OrderSnapshotRepository snapshotRepository, int snapshotEvery) {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("Expected snapshotEvery >= 1, got %d".formatted(snapshotEvery));
+        }
+        this.eventRepository = eventRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    public Optional<Order> rehydrate(String orderId) {
+        final var snapshot = snapshotRepository.findById(orderId);
+        final var tail = snapshot
+                .map(found -> eventRepository.loadEventsAfter(orderId, found.position()))
+                .orElseGet(() -> eventRepository.loadEvents(orderId));
+
+        Order order = snapshot.map(OrderSnapshot::order).orElse(null);
+        String position = snapshot.map(OrderSnapshot::position).orElse(null);
+        int folded = 0;
+        try (tail) {
+            for (final var iterator = tail.iterator(); iterator.hasNext(); ) {
+                final var recorded = iterator.next();
+                order = OrderUpdate.from(recorded.event(), recorded.recordedAt()).applyTo(order);
+                position = recorded.sk();
+                folded++;
+            }
+        }
+
+        if (folded >= snapshotEvery) {
+            snapshotRepository.save(new OrderSnapshot(order, position));
+        }
+        return Optional.ofNullable(order);
+    }
+}
@@ -1,128 +1,160 @@
 package com.wfuertes.domain;
 
+import com.wfuertes.infra.events.Order;
 import com.wfuertes.infra.events.OrderCompleted;
 import com.wfuertes.infra.events.OrderCreated;
 import com.wfuertes.infra.events.OrderDiscount;
 import com.wfuertes.infra.events.OrderOffer;
 import lombok.AllArgsConstructor;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
 @AllArgsConstructor
 public class OrderService {
 
-    private final OrderRepository orderRepository;
-    private final OrderEventRepository eventRepository;
+    private final AsyncOrderRepository orders;
+    private final OrderJournal journal;
+    private final ConflictRetry conflictRetry;
+    private final RecentEventIds recentEventIds;
+    private final LongAdder duplicates = new LongAdder();
 
     public void handleOrderCreated(OrderCreated orderCreated) {
-        try {
-            orderRepository
-                    .findById(orderCreated.orderId())
-                    .ifPresentOrElse(
-                            order -> orderRepository.update(
-                                    order.toBuilder()
-                                            .number(orderCreated.orderNumber())
-                                            .type(orderCreated.type())
-                                            .version(order.version() + 1L)
-                                            .updatedAt(DateUtils.utcLocalDateTime())
-                                            .build(),
-                                    order.version()
-                            ),
-                            () -> orderRepository.save(Order.builder()
-                                    .id(orderCreated.orderId())
-                                    .number(orderCreated.orderNumber())
-                                    .type(orderCreated.type())
-                                    .version(1L)
-                                    .createdAt(DateUtils.utcLocalDateTime())
-                                    .updatedAt(DateUtils.utcLocalDateTime())
-                                    .build())
-                    );
-            eventRepository.save(orderCreated);
-        } catch (Throwable err) {
-            throw new UnableHandlingEvent(orderCreated, err);
-        }
+        join(handleOrderCreatedAsync(orderCreated));
     }
 
     public void handlerOrderDiscount(OrderDiscount orderDiscount) {
-        try {
-            orderRepository
-                    .findById(orderDiscount.orderId())
-                    .ifPresentOrElse(
-                            order -> orderRepository.update(
-                                    order.toBuilder()
-                                            .discountAmount(orderDiscount.amount())
-                                            .version(order.version() + 1L)
-                                            .updatedAt(DateUtils.utcLocalDateTime())
-                                            .build(),
-                                    order.version()
-                            ),
-                            () -> orderRepository.save(Order.builder()
-                                    .id(orderDiscount.orderId())
-                                    .discountAmount(orderDiscount.amount())
-                                    .version(1L)
-                                    .createdAt(DateUtils.utcLocalDateTime())
-                                    .updatedAt(DateUtils.utcLocalDateTime())
-                                    .build())
-                    );
-            eventRepository.save(orderDiscount);
-        } catch (Throwable err) {
-            throw new UnableHandlingEvent(orderDiscount, err);
-        }
+        join(handlerOrderDiscountAsync(orderDiscount));
     }
 
     public void handlerOrderOffer(OrderOffer orderOffer) {
-        try {
-            orderRepository
-                    .findById(orderOffer.orderId())
-                    .ifPresentOrElse(
-                            order -> orderRepository.update(
-                                    order.toBuilder()
-                                            .offerAmount(orderOffer.amount())
-                                            .offerType(orderOffer.offerType())
-                                            .version(order.version() + 1L)
-                                            .updatedAt(DateUtils.utcLocalDateTime())
-                                            .build(),
-                                    order.version()
-                            ),
-                            () -> orderRepository.save(Order.builder()
-                                    .id(orderOffer.orderId())
-                                    .offerAmount(orderOffer.amount())
-                                    .offerType(orderOffer.offerType())
-                                    .version(1L)
-                                    .createdAt(DateUtils.utcLocalDateTime())
-                                    .updatedAt(DateUtils.utcLocalDateTime())
-                                    .build())
-                    );
-            eventRepository.save(orderOffer);
-        } catch (Throwable err) {
-            throw new UnableHandlingEvent(orderOffer, err);
-        }
+        join(handlerOrderOfferAsync(orderOffer));
     }
 
     public void handleOrderCompleted(OrderCompleted orderCompleted) {
+        join(handleOrderCompletedAsync(orderCompleted));
+    }
+
+    public CompletableFuture<Void> handleOrderCreatedAsync(OrderCreated orderCreated) {
+        return handle(orderCreated, List.of(orderCreated));
+    }
+
+    public CompletableFuture<Void> handlerOrderDiscountAsync(OrderDiscount orderDiscount) {
+        return handle(orderDiscount, List.of(orderDiscount));
+    }
+
+    public CompletableFuture<Void> handlerOrderOfferAsync(OrderOffer orderOffer) {
+        return handle(orderOffer, List.of(orderOffer));
+    }
+
+    public CompletableFuture<Void> handleOrderCompletedAsync(OrderCompleted orderCompleted) {
+        return handle(orderCompleted, List.of(orderCompleted));
+    }
+
+    /**
+     * Handles several events of one order as a single write: their updates are merged into one snapshot
+     * mutation committed together with all the events.
+     */
+    public CompletableFuture<Void> handleAllAsync(List<? extends Order> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final var orderId = events.get(0).orderId();
+        for (final var event : events) {
+            if (!orderId.equals(event.orderId())) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException(
+                        "Events of orders %s and %s cannot be handled together".formatted(orderId, event.orderId())));
+            }
+        }
+        return handle(events.get(0), events);
+    }
+
+    /**
+     * Applies the events not applied before: recently applied ones and repeats within {@code events} are dropped
+     * up front, and the ones the journal reports as duplicates are dropped before writing the rest, so a redelivery
+     * never changes the order again.
+     * Every attempt reads the version of the order first and only commits if it is still the stored one.
+     */
+    private CompletableFuture<Void> handle(Order event, List<? extends Order> events) {
+        final var seen = new HashSet<String>();
+        final var fresh = events
+                .stream()
+                .filter(candidate -> candidate.eventId() == null
+                        || !recentEventIds.contains(candidate.eventId()) && seen.add(candidate.eventId()))
+                .toList();
+        duplicates.add(events.size() - fresh.size());
+        if (fresh.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return conflictRetry
+                .run(() -> orders
+                        .findById(event.orderId())
+                        .thenCompose(current -> journal.append(updateOf(fresh, current.map(order -> order.version()).orElse(0L)), fresh)))
+                .handle((ignored, err) -> {
+                    if (err == null) {
+                        remember(fresh);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    final var cause = err instanceof CompletionException ? err.getCause() : err;
+                    if (cause instanceof DuplicateEvents duplicate) {
+                        final var remaining = fresh
+                                .stream()
+                                .filter(candidate -> !duplicate.getEventIds().contains(candidate.eventId()))
+                                .toList();
+                        if (remaining.size() < fresh.size()) {
+                            duplicates.add(fresh.size() - remaining.size());
+                            duplicate.getEventIds().forEach(recentEventIds::add);
+                            return handle(event, remaining);
+                        }
+                    }
+                    return CompletableFuture.<Void>failedFuture(new UnableHandlingEvent(event, cause));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private void remember(List<? extends Order> events) {
+        for (final var event : events) {
+            if (event.eventId() != null) {
+                recentEventIds.add(event.eventId());
+            }
+        }
+    }
+
+    /**
+     * One snapshot mutation for all the events, the later ones winning, expecting the order at {@code version}.
+     */
+    private static OrderUpdate updateOf(List<? extends Order> events, long version) {
+        final var updatedAt = DateUtils.utcLocalDateTime();
+        return events
+                .stream()
+                .map(event -> OrderUpdate.from(event, updatedAt))
+                .reduce(OrderUpdate::merge)
+                .orElseThrow()
+                .toBuilder()
+                .expectedVersion(version)
+                .build();
+    }
+
+    /**
+     * Events dropped because they had already been applied.
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    private static void join(CompletableFuture<Void> handling) {
         try {
-            orderRepository
-                    .findById(orderCompleted.orderId())
-                    .ifPresentOrElse(
-                            order -> orderRepository.update(
-                                    order.toBuilder()
-                                            .foodsTotal(orderCompleted.foodsTotal())
-                                            .taxes(orderCompleted.taxes())
-                                            .version(order.version() + 1L)
-                                            .updatedAt(DateUtils.utcLocalDateTime())
-                                            .build(),
-                                    order.version()
-                            ),
-                            () -> orderRepository.save(Order.builder()
-                                    .id(orderCompleted.orderId())
-                                    .foodsTotal(orderCompleted.foodsTotal())
-                                    .taxes(orderCompleted.taxes())
-                                    .version(1L)
-                                    .createdAt(DateUtils.utcLocalDateTime())
-                                    .updatedAt(DateUtils.utcLocalDateTime())
-                                    .build())
-                    );
-            eventRepository.save(orderCompleted);
-        } catch (Throwable err) {
-            throw new UnableHandlingEvent(orderCompleted, err);
+            handling.join();
+        } catch (CompletionException err) {
+            if (err.getCause() instanceof UnableHandlingEvent unableHandlingEvent) {
+                throw unableHandlingEvent;
+            }
+            throw err;
         }
     }
 }
@@ -0,0 +1,7 @@
+package com.wfuertes.domain;
+
+/**
+ * An order folded from its event stream up to and including the event at {@code position}.
+ */
+public record OrderSnapshot(Order order, String position) {
+}
@@ -0,0 +1,10 @@
+package com.wfuertes.domain;
+
+import java.util.Optional;
+
+public interface OrderSnapshotRepository {
+
+    void save(OrderSnapshot snapshot);
+
+    Optional<OrderSnapshot> findById(String orderId);
+}
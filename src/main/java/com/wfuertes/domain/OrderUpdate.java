@@ -0,0 +1,142 @@
+package com.wfuertes.domain;
+
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * The fields of an {@link Order} changed by a single event, applied to the stored snapshot
+ * without reading it first.
+ */
+@Value
+@Builder(toBuilder = true)
+@Accessors(fluent = true)
+public class OrderUpdate {
+    @NonNull String id;
+    Long number;
+    String type;
+    Integer foodsTotal;
+    Integer taxes;
+    Integer discountAmount;
+    Integer offerAmount;
+    String offerType;
+    Long expectedVersion;
+    @NonNull LocalDateTime updatedAt;
+
+    public static OrderUpdate from(com.wfuertes.infra.events.Order event) {
+        return from(event, DateUtils.utcLocalDateTime());
+    }
+
+    public static OrderUpdate from(com.wfuertes.infra.events.Order event, LocalDateTime updatedAt) {
+        final var builder = OrderUpdate.builder()
+                .id(event.orderId())
+                .updatedAt(updatedAt);
+        if (event instanceof OrderCreated orderCreated) {
+            return builder
+                    .number(orderCreated.orderNumber())
+                    .type(orderCreated.type())
+                    .build();
+        }
+        if (event instanceof OrderDiscount orderDiscount) {
+            return builder
+                    .discountAmount(orderDiscount.amount())
+                    .build();
+        }
+        if (event instanceof OrderOffer orderOffer) {
+            return builder
+                    .offerAmount(orderOffer.amount())
+                    .offerType(orderOffer.offerType())
+                    .build();
+        }
+        if (event instanceof OrderCompleted orderCompleted) {
+            return builder
+                    .foodsTotal(orderCompleted.foodsTotal())
+                    .taxes(orderCompleted.taxes())
+                    .build();
+        }
+        throw new IllegalArgumentException("Unknown event %s".formatted(event.getClass().getSimpleName()));
+    }
+
+    /**
+     * Combines this update with the one of a later event of the same order: the later fields win, the expected
+     * version stays the one of the first write.
+     */
+    public OrderUpdate merge(OrderUpdate next) {
+        if (!id.equals(next.id)) {
+            throw new IllegalArgumentException("Cannot merge updates of orders %s and %s".formatted(id, next.id));
+        }
+        final var builder = toBuilder().updatedAt(next.updatedAt);
+        next.number().ifPresent(builder::number);
+        next.type().ifPresent(builder::type);
+        next.foodsTotal().ifPresent(builder::foodsTotal);
+        next.taxes().ifPresent(builder::taxes);
+        next.discountAmount().ifPresent(builder::discountAmount);
+        next.offerAmount().ifPresent(builder::offerAmount);
+        next.offerType().ifPresent(builder::offerType);
+        return builder.build();
+    }
+
+    /**
+     * Folds this update onto {@code order}, or onto an empty order when it is {@code null}, the same way the
+     * upsert applies it to the stored snapshot.
+     */
+    public Order applyTo(Order order) {
+        final var builder = order == null
+                ? Order.builder().id(id).createdAt(updatedAt)
+                : order.toBuilder();
+        number().ifPresent(builder::number);
+        type().ifPresent(builder::type);
+        foodsTotal().ifPresent(builder::foodsTotal);
+        taxes().ifPresent(builder::taxes);
+        discountAmount().ifPresent(builder::discountAmount);
+        offerAmount().ifPresent(builder::offerAmount);
+        offerType().ifPresent(builder::offerType);
+        return builder
+                .version(order == null ? 1L : order.version() + 1L)
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    public Optional<Long> number() {
+        return Optional.ofNullable(number);
+    }
+
+    public Optional<String> type() {
+        return Optional.ofNullable(type);
+    }
+
+    public Optional<Integer> foodsTotal() {
+        return Optional.ofNullable(foodsTotal);
+    }
+
+    public Optional<Integer> taxes() {
+        return Optional.ofNullable(taxes);
+    }
+
+    public Optional<Integer> discountAmount() {
+        return Optional.ofNullable(discountAmount);
+    }
+
+    public Optional<Integer> offerAmount() {
+        return Optional.ofNullable(offerAmount);
+    }
+
+    public Optional<String> offerType() {
+        return Optional.ofNullable(offerType);
+    }
+
+    /**
+     * When present the write only succeeds if the stored snapshot is still at this version, 0 meaning absent.
+     */
+    public Optional<Long> expectedVersion() {
+        return Optional.ofNullable(expectedVersion);
+    }
+}
@@ -0,0 +1,16 @@
+package com.wfuertes.domain;
+
+public class OrderVersionConflict extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String orderId;
+
+    public OrderVersionConflict(String orderId, Throwable err) {
+        super("Order %s was changed concurrently".formatted(orderId), err);
+        this.orderId = orderId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+}
@@ -0,0 +1,34 @@
+package com.wfuertes.domain;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ids of the last {@code maxSize} events applied by this process, so a redelivery arriving shortly after is
+ * dropped without a write. Exact rather than probabilistic: a false positive would lose an event.
+ */
+public class RecentEventIds {
+
+    private final Map<String, Boolean> ids;
+
+    public RecentEventIds(int maxSize) {
+        this.ids = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean contains(String eventId) {
+        synchronized (ids) {
+            return ids.get(eventId) != null;
+        }
+    }
+
+    public void add(String eventId) {
+        synchronized (ids) {
+            ids.put(eventId, Boolean.TRUE);
+        }
+    }
+}
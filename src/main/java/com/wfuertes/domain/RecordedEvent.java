@@ -0,0 +1,11 @@
+package com.wfuertes.domain;
+
+import com.wfuertes.infra.events.Order;
+
+import java.time.LocalDateTime;
+
+/**
+ * An event read back from the order's event stream, with the sort key that positions it in the stream.
+ */
+public record RecordedEvent(String sk, LocalDateTime recordedAt, Order event) {
+}
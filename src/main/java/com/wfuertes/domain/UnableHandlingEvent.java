@@ -3,11 +3,13 @@ package com.wfuertes.domain;
 import com.wfuertes.infra.events.Order;
 
 public class UnableHandlingEvent extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
     private final Order order;
 
-    public UnableHandlingEvent(Order order,  Throwable err) {
+    public UnableHandlingEvent(Order order, Throwable err) {
+        super("Unable to handle %s of order %s".formatted(order.getClass().getSimpleName(), order.orderId()), err);
         this.order = order;
-        addSuppressed(err);
     }
 
     public Order getEvent() {
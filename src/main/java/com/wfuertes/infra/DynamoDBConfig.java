@@ -5,6 +5,7 @@ import com.wfuertes.infra.aws.AwsCredentialsProviderFactory;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
 import java.net.URI;
@@ -19,4 +20,13 @@ public class DynamoDBConfig {
                 .endpointOverride(URI.create("http://localhost:8000"))
                 .build();
     }
+
+    public static DynamoDbAsyncClient createAsyncClient() {
+        return DynamoDbAsyncClient.builder()
+                .region(Region.US_EAST_1) // Change to your preferred region
+                .credentialsProvider(AwsCredentialsProviderFactory.create())
+                // Uncomment the below line if connecting to a local DynamoDB instance
+                .endpointOverride(URI.create("http://localhost:8000"))
+                .build();
+    }
 }
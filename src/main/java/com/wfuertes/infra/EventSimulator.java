@@ -1,30 +1,57 @@
 package com.wfuertes.infra;
 
 import com.github.javafaker.Faker;
+import com.wfuertes.domain.ConflictRetry;
 import com.wfuertes.domain.OrderService;
+import com.wfuertes.domain.RecentEventIds;
+import com.wfuertes.infra.aws.SnsBatchPublisher;
 import com.wfuertes.infra.aws.SnsPublisher;
 import com.wfuertes.infra.aws.SqsConsumer;
+import com.wfuertes.infra.aws.Topology;
+import com.wfuertes.infra.aws.TransportMode;
+import com.wfuertes.infra.concurrent.AdaptiveLimiter;
+import com.wfuertes.infra.concurrent.KeyedExecutor;
 import com.wfuertes.infra.events.*;
 import com.wfuertes.infra.json.JsonParser;
-import com.wfuertes.infra.nosql.DynamoOrderEventRepository;
-import com.wfuertes.infra.nosql.DynamoOrderRepository;
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.MetricsEndpoint;
+import com.wfuertes.infra.nosql.DynamoAsyncOrderRepository;
+import com.wfuertes.infra.nosql.DynamoOrderJournal;
+import com.wfuertes.infra.nosql.MonotonicUlidGenerator;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class EventSimulator {
     private static final Faker FAKER = new Faker();
-
-    private final SnsPublisher snsPublisher;
+    private static final int DISPATCH_LANES = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_IN_FLIGHT_PER_QUEUE = 256;
+    // Bounds of the transactions in flight against orders_app, the limit in between follows its throttling
+    private static final int MIN_DYNAMO_IN_FLIGHT = 4;
+    private static final int INITIAL_DYNAMO_IN_FLIGHT = 32;
+    private static final int MAX_DYNAMO_IN_FLIGHT = 512;
+    private static final Duration PUBLISH_LINGER = Duration.ofMillis(50);
+    private static final int MAX_BUFFERED_PUBLISHES = 1_000;
+    private static final int RECENT_EVENT_IDS = 100_000;
+    private static final TransportMode TRANSPORT_MODE = TransportMode.BINARY;
+    private static final Topology TOPOLOGY = Topology.FIFO;
+    private static final int METRICS_PORT = 9404;
+
+    private final SnsBatchPublisher snsPublisher;
     private final SqsConsumer sqsConsumer;
     private final OrderService orderService;
+    private final ExecutorService publisherPool = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "event-publisher"));
 
-    public EventSimulator(SnsPublisher snsPublisher, SqsConsumer sqsConsumer, OrderService orderService) {
+    public EventSimulator(SnsBatchPublisher snsPublisher, SqsConsumer sqsConsumer, OrderService orderService) {
         this.snsPublisher = snsPublisher;
         this.sqsConsumer = sqsConsumer;
         this.orderService = orderService;
@@ -32,20 +59,35 @@ public class EventSimulator {
 
     public static void main(String[] args) {
         final var jsonParser = new JsonParser();
-        final var snsPublisher = new SnsPublisher(jsonParser);
-        final var sqsConsumer = new SqsConsumer(jsonParser);
-        final var dynamoClient = DynamoDBConfig.createClient();
-        final var orderService = new OrderService(
-                new DynamoOrderRepository(dynamoClient),
-                new DynamoOrderEventRepository(dynamoClient)
-        );
+        final var snsPublisher = new SnsBatchPublisher(jsonParser, TRANSPORT_MODE, TOPOLOGY, PUBLISH_LINGER, MAX_BUFFERED_PUBLISHES);
+        final var dispatcher = new KeyedExecutor("order-events", DISPATCH_LANES);
+        final var dynamoLimiter = new AdaptiveLimiter("orders_app", MIN_DYNAMO_IN_FLIGHT, INITIAL_DYNAMO_IN_FLIGHT, MAX_DYNAMO_IN_FLIGHT);
+        final var sqsConsumer = new SqsConsumer(jsonParser, EventTypeRegistry.orderEvents(), TRANSPORT_MODE, TOPOLOGY, dispatcher,
+                MAX_IN_FLIGHT_PER_QUEUE, dynamoLimiter);
+        final var dynamoClient = DynamoDBConfig.createAsyncClient();
+        final var conflictRetry = new ConflictRetry(5, Duration.ofMillis(20), Duration.ofMillis(500));
+        final var journal = new DynamoOrderJournal(dynamoClient, MonotonicUlidGenerator.shared(), dynamoLimiter);
+        final var orders = new DynamoAsyncOrderRepository(dynamoClient);
+        final var orderService = new OrderService(orders, journal, conflictRetry, new RecentEventIds(RECENT_EVENT_IDS));
+
+        final var metrics = Metrics.global();
+        metrics.gauge("conflictRetry.conflicts", conflictRetry::conflicts);
+        metrics.gauge("conflictRetry.retries", conflictRetry::retries);
+        metrics.gauge("conflictRetry.exhausted", conflictRetry::exhausted);
+        metrics.gauge("orderService.duplicates", orderService::duplicates);
+        final var metricsEndpoint = new MetricsEndpoint(metrics, METRICS_PORT);
         final var simulator = new EventSimulator(snsPublisher, sqsConsumer, orderService);
 
         simulator.startPublisher();
-        simulator.consumeOrderCreated();
-        simulator.consumeOrderCompleted();
-        simulator.consumeOrderDiscount();
-        simulator.consumeOrderOffer();
+        simulator.startConsumer();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            simulator.stopPublisher();
+            snsPublisher.close();
+            sqsConsumer.close();
+            dispatcher.close();
+            metricsEndpoint.close();
+        }, "event-simulator-shutdown"));
     }
 
     private void startPublisher() {
@@ -56,19 +98,19 @@ public class EventSimulator {
 
                     for (Order order : orderEvents) {
                         if (order instanceof OrderCreated) {
-                            snsPublisher.publish(SnsPublisher.ORDER_CREATED, order);
+                            publish(SnsPublisher.ORDER_CREATED, order);
                         }
 
                         if (order instanceof OrderDiscount) {
-                            snsPublisher.publish(SnsPublisher.ORDER_DISCOUNT, order);
+                            publish(SnsPublisher.ORDER_DISCOUNT, order);
                         }
 
                         if (order instanceof OrderOffer) {
-                            snsPublisher.publish(SnsPublisher.ORDER_OFFER, order);
+                            publish(SnsPublisher.ORDER_OFFER, order);
                         }
 
                         if (order instanceof OrderCompleted) {
-                            snsPublisher.publish(SnsPublisher.ORDER_COMPLETED, order);
+                            publish(SnsPublisher.ORDER_COMPLETED, order);
                         }
 
                         final var deplay = FAKER.number().numberBetween(200L, 500L);
@@ -76,47 +118,59 @@ public class EventSimulator {
                     }
                 }
 
+            } catch (InterruptedException err) {
+                Thread.currentThread().interrupt();
             } catch (Throwable err) {
                 throw new RuntimeException(err);
             }
         };
-        Executors.newFixedThreadPool(4).execute(publisher);
-    }
-
-    private void consumeOrderCreated() {
-        final Runnable consumer = () -> sqsConsumer.consume(SqsConsumer.ORDER_CREATED, orderService::handleOrderCreated, OrderCreated.class);
-        Executors.newFixedThreadPool(1).execute(consumer);
+        publisherPool.execute(publisher);
     }
 
-    private void consumeOrderDiscount() {
-        final Runnable consumer = () -> sqsConsumer.consume(SqsConsumer.ORDER_DISCOUNT, orderService::handlerOrderDiscount, OrderDiscount.class);
-        Executors.newFixedThreadPool(1).execute(consumer);
+    /**
+     * Interrupts the publishing loop and waits for it to leave, so nothing is published once the publisher closes.
+     */
+    private void stopPublisher() {
+        publisherPool.shutdownNow();
+        try {
+            publisherPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void consumeOrderOffer() {
-        final Runnable consumer = () -> sqsConsumer.consume(SqsConsumer.ORDER_OFFER, orderService::handlerOrderOffer, OrderOffer.class);
-        Executors.newFixedThreadPool(1).execute(consumer);
+    private void publish(String topicName, Order order) {
+        snsPublisher
+                .publish(topicName, order)
+                .exceptionally(err -> {
+                    System.out.printf("Publisher:Topic[%s] order %s not published: %s%n", topicName, order.orderId(), err.getMessage());
+                    return null;
+                });
     }
 
-    private void consumeOrderCompleted() {
-        final Runnable consumer = () -> sqsConsumer.consume(SqsConsumer.ORDER_COMPLETED, orderService::handleOrderCompleted, OrderCompleted.class);
-        Executors.newFixedThreadPool(1).execute(consumer);
+    private void startConsumer() {
+        sqsConsumer
+                .registerCoalesced(
+                        List.of(OrderCreated.class, OrderDiscount.class, OrderOffer.class, OrderCompleted.class),
+                        orderService::handleAllAsync)
+                .start();
     }
 
     private static Set<Order> create() {
         final var orderCreated = new OrderCreated(
                 UUID.randomUUID().toString(),
                 FAKER.number().randomNumber(),
-                FAKER.random().nextBoolean() ? "DELIVERY" : "PICKUP"
+                FAKER.random().nextBoolean() ? "DELIVERY" : "PICKUP",
+                UUID.randomUUID().toString()
         );
 
-        final var orderDiscount = new OrderDiscount(orderCreated.orderId(), FAKER.random().nextInt(0, 3000));
+        final var orderDiscount = new OrderDiscount(orderCreated.orderId(), FAKER.random().nextInt(0, 3000), UUID.randomUUID().toString());
 
-        final var orderOffer = new OrderOffer(orderCreated.orderId(), FAKER.random().nextInt(0, 3000), "SUPER_10");
+        final var orderOffer = new OrderOffer(orderCreated.orderId(), FAKER.random().nextInt(0, 3000), "SUPER_10", UUID.randomUUID().toString());
 
         var foodsTotal = FAKER.random().nextInt(1000, 10000);
         var taxes = foodsTotal * FAKER.number().numberBetween(5, 13) / 100;
-        final var orderCompleted = new OrderCompleted(orderCreated.orderId(), foodsTotal, taxes);
+        final var orderCompleted = new OrderCompleted(orderCreated.orderId(), foodsTotal, taxes, UUID.randomUUID().toString());
 
         final var orders = Stream
                 .of(orderCreated, orderDiscount, orderOffer, orderCompleted)
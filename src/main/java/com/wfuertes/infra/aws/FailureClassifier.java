@@ -0,0 +1,65 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.domain.OrderVersionConflict;
+import com.wfuertes.domain.UnableHandlingEvent;
+import com.wfuertes.infra.nosql.DynamoErrors;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Tells failures worth retrying (throttling, lost optimistic races, server and network errors) from poison
+ * messages known to fail the same way on every delivery (undecodable or invalid events, requests the service
+ * rejected as invalid). Anything else is unknown: it may be a bug or a transient error nobody anticipated.
+ */
+final class FailureClassifier {
+
+    enum Failure {
+        RETRYABLE,
+        POISON,
+        /**
+         * Neither retried in place nor dead-lettered right away: left to SQS redelivery, whose redrive policy
+         * dead-letters the message once it has been received too many times.
+         */
+        UNKNOWN
+    }
+
+    private FailureClassifier() {
+    }
+
+    static Failure classify(Throwable err) {
+        final var cause = rootOf(err);
+        if (cause instanceof OrderVersionConflict || cause instanceof SdkClientException) {
+            return Failure.RETRYABLE;
+        }
+        if (DynamoErrors.isThrottling(cause) || DynamoErrors.isTransactionConflict(cause)) {
+            return Failure.RETRYABLE;
+        }
+        if (cause instanceof SdkServiceException service) {
+            if (service.isThrottlingException() || service.retryable() || service.statusCode() >= 500) {
+                return Failure.RETRYABLE;
+            }
+            if (service.statusCode() >= 400) {
+                return Failure.POISON;
+            }
+        }
+        if (cause instanceof IllegalArgumentException) {
+            return Failure.POISON;
+        }
+        return Failure.UNKNOWN;
+    }
+
+    /**
+     * Strips the future and handler wrappers.
+     */
+    static Throwable rootOf(Throwable err) {
+        var cause = err;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException || cause instanceof UnableHandlingEvent)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
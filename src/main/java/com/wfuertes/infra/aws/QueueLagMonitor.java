@@ -0,0 +1,101 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.metrics.Metrics;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.GetQueueAttributesRequest;
+import software.amazon.awssdk.services.sqs.model.QueueAttributeName;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples the backlog of the consumed queues in the background and publishes it as gauges:
+ * {@code sqs.<queue>.visible}, {@code .inFlight} and {@code .delayed} from {@code GetQueueAttributes}, plus
+ * {@code .oldestReceivedAgeMillis}, the age of the oldest message of the latest non-empty receive.
+ * <p>
+ * {@code ApproximateAgeOfOldestMessage} is only a CloudWatch metric, not a queue attribute, so the consumer
+ * reports the age of what it receives instead: receives return the head of the queue, which makes it a close
+ * stand-in while the consumer keeps up and an upper bound on freshness when it does not.
+ */
+class QueueLagMonitor implements AutoCloseable {
+    private final SqsClient sqsClient;
+    private final Map<String, String> queueUrls;
+    private final Map<String, QueueLag> lags = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    QueueLagMonitor(SqsClient sqsClient, Map<String, String> queueUrls, Duration period, Metrics metrics) {
+        this.sqsClient = sqsClient;
+        this.queueUrls = Map.copyOf(queueUrls);
+        for (final var queueName : queueUrls.keySet()) {
+            final var lag = new QueueLag();
+            lags.put(queueName, lag);
+            metrics.gauge("sqs.%s.visible".formatted(queueName), lag.visible::get);
+            metrics.gauge("sqs.%s.inFlight".formatted(queueName), lag.inFlight::get);
+            metrics.gauge("sqs.%s.delayed".formatted(queueName), lag.delayed::get);
+            metrics.gauge("sqs.%s.oldestReceivedAgeMillis".formatted(queueName), lag::oldestReceivedAgeMillis);
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "sqs-lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::sample, 0, period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called with the oldest {@code SentTimestamp} of every receive, 0 when it returned nothing.
+     */
+    void received(String queueName, long oldestSentAt) {
+        final var lag = lags.get(queueName);
+        if (lag != null) {
+            lag.oldestReceivedSentAt.set(oldestSentAt);
+        }
+    }
+
+    private void sample() {
+        for (final var queue : queueUrls.entrySet()) {
+            try {
+                final var attributes = sqsClient.getQueueAttributes(GetQueueAttributesRequest
+                        .builder()
+                        .queueUrl(queue.getValue())
+                        .attributeNames(
+                                QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES,
+                                QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE,
+                                QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED)
+                        .build()).attributes();
+                final var lag = lags.get(queue.getKey());
+                lag.visible.set(count(attributes.get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES)));
+                lag.inFlight.set(count(attributes.get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_NOT_VISIBLE)));
+                lag.delayed.set(count(attributes.get(QueueAttributeName.APPROXIMATE_NUMBER_OF_MESSAGES_DELAYED)));
+            } catch (Exception err) {
+                System.out.printf("Consumer:Queue[%s] lag not sampled: %s%n", queue.getKey(), err.getMessage());
+            }
+        }
+    }
+
+    private static long count(String value) {
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class QueueLag {
+        private final AtomicLong visible = new AtomicLong();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong delayed = new AtomicLong();
+        private final AtomicLong oldestReceivedSentAt = new AtomicLong();
+
+        long oldestReceivedAgeMillis() {
+            final var sentAt = oldestReceivedSentAt.get();
+            return sentAt == 0 ? 0L : Math.max(0L, System.currentTimeMillis() - sentAt);
+        }
+    }
+}
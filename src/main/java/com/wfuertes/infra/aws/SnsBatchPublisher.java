@@ -0,0 +1,319 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.codec.BinaryEventCodec;
+import com.wfuertes.infra.events.EventTypeRegistry;
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.json.JsonParser;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes through {@code PublishBatch} on the async SNS client: messages are grouped per topic and sent once
+ * 10 are waiting, once the next one would take the batch above the 256 KiB SNS accepts, or once the oldest has
+ * waited {@code linger}, with any number of batches in flight.
+ * <p>
+ * At most {@code maxBuffered} messages are buffered or in flight; {@link #publish} blocks the caller beyond that,
+ * which pushes back on producers when SNS falls behind.
+ * <p>
+ * {@link #close()} sends what is buffered and waits for the batches in flight; a message still unpublished after
+ * the grace period, or published after close, fails.
+ */
+public class SnsBatchPublisher implements AutoCloseable {
+    public static final int MAX_BATCH_SIZE = 10;
+    // Of all the messages of a batch, their attributes included
+    public static final int MAX_BATCH_BYTES = 256 * 1024;
+    private static final int CLOSE_GRACE_SECONDS = 10;
+
+    private final SnsAsyncClient snsClient;
+    private final JsonParser jsonParser;
+    private final BinaryEventCodec binaryCodec = new BinaryEventCodec();
+    private final TransportMode transportMode;
+    private final Topology topology;
+    private final Map<String, TopicBuffer> topics = new HashMap<>();
+    private final Semaphore capacity;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Set<CompletableFuture<String>> unpublished = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public SnsBatchPublisher(JsonParser jsonParser,
+                             TransportMode transportMode,
+                             Topology topology,
+                             Duration linger,
+                             int maxBuffered) {
+        this(SnsAsyncClient
+                        .builder()
+                        .credentialsProvider(AwsCredentialsProviderFactory.create())
+                        .endpointOverride(URI.create(SnsPublisher.LOCAL_ENDPOINT))
+                        .region(Region.US_EAST_1)
+                        .build(),
+                jsonParser, transportMode, topology, linger, maxBuffered);
+    }
+
+    SnsBatchPublisher(SnsAsyncClient snsClient,
+                      JsonParser jsonParser,
+                      TransportMode transportMode,
+                      Topology topology,
+                      Duration linger,
+                      int maxBuffered) {
+        this.snsClient = snsClient;
+        this.jsonParser = jsonParser;
+        this.transportMode = transportMode;
+        this.topology = topology;
+        this.capacity = new Semaphore(maxBuffered);
+        this.lingerNanos = linger.toNanos();
+
+        for (final var topicName : SnsPublisher.topics(topology)) {
+            final var response = snsClient.createTopic(SnsPublisher.createTopicRequest(topicName)).join();
+            topics.put(topicName, new TopicBuffer(response.topicArn()));
+            System.out.printf("Publisher:Topic[%s] -> %s", topicName, response.topicArn());
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "sns-batch-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var period = Math.max(1L, linger.toMillis() / 2);
+        this.scheduler.scheduleAtFixedRate(this::flushIfDue, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Completes with the SNS message id once the message is accepted.
+     */
+    public CompletableFuture<String> publish(String topicName, Order value) {
+        final var topic = topics.get(SnsPublisher.physicalTopic(topology, topicName));
+        if (topic == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown topic %s".formatted(topicName)));
+        }
+
+        final var message = body(value);
+        final var attributes = SnsPublisher.messageAttributes(EventTypeRegistry.typeOf(value), System.currentTimeMillis());
+        final var size = sizeOf(topicName, message, attributes);
+        if (size > MAX_BATCH_BYTES) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "Message of %d bytes is above the %d SNS accepts".formatted(size, MAX_BATCH_BYTES)));
+        }
+
+        final var pending = new Pending(topicName, message, attributes, size, value.orderId(), value.eventId(),
+                new CompletableFuture<>());
+        capacity.acquireUninterruptibly();
+        unpublished.add(pending.published);
+        pending.published.whenComplete((messageId, err) -> {
+            unpublished.remove(pending.published);
+            capacity.release();
+        });
+
+        List<Pending> batch = null;
+        synchronized (topic) {
+            // Checked under the topic lock, so close() flushes whatever got in before
+            if (closed) {
+                pending.published.completeExceptionally(new IllegalStateException("Publisher closed"));
+                return pending.published;
+            }
+            if (topic.pendingBytes + size > MAX_BATCH_BYTES) {
+                // Leaves this one pending alone, so the batch can't be full as well
+                batch = drain(topic);
+            }
+            if (topic.pending.isEmpty()) {
+                topic.oldestPendingAt = System.nanoTime();
+            }
+            topic.pending.add(pending);
+            topic.pendingBytes += size;
+            if (topic.pending.size() >= MAX_BATCH_SIZE) {
+                batch = drain(topic);
+            }
+        }
+        if (batch != null) {
+            send(topic.arn, batch);
+        }
+        return pending.published;
+    }
+
+    public void flush() {
+        for (final var topic : topics.values()) {
+            final List<Pending> batch;
+            synchronized (topic) {
+                batch = drain(topic);
+            }
+            send(topic.arn, batch);
+        }
+    }
+
+    private void flushIfDue() {
+        final var now = System.nanoTime();
+        for (final var topic : topics.values()) {
+            final List<Pending> batch;
+            synchronized (topic) {
+                if (topic.pending.isEmpty() || now - topic.oldestPendingAt < lingerNanos) {
+                    continue;
+                }
+                batch = drain(topic);
+            }
+            send(topic.arn, batch);
+        }
+    }
+
+    /**
+     * Called holding the topic lock. A FIFO topic gets one batch in flight at a time, chained here so two batches
+     * can never reach SNS out of order; the returned batch is then empty.
+     */
+    private List<Pending> drain(TopicBuffer topic) {
+        final var batch = topic.drain();
+        if (topology != Topology.FIFO || batch.isEmpty()) {
+            return batch;
+        }
+        topic.sending = topic.sending.thenCompose(ignored -> send(topic.arn, batch));
+        return List.of();
+    }
+
+    /**
+     * Never fails, a FIFO topic chains its next batch on the returned future.
+     */
+    private CompletableFuture<Void> send(String topicArn, List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final CompletableFuture<PublishBatchResponse> published;
+        try {
+            published = snsClient.publishBatch(publishBatchRequest(topicArn, batch));
+        } catch (Exception err) {
+            batch.forEach(pending -> pending.published.completeExceptionally(err));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return published
+                .whenComplete((response, err) -> {
+                    if (err != null) {
+                        batch.forEach(pending -> pending.published.completeExceptionally(err));
+                        return;
+                    }
+                    for (final var success : response.successful()) {
+                        batch.get(Integer.parseInt(success.id())).published.complete(success.messageId());
+                    }
+                    for (final var failed : response.failed()) {
+                        batch.get(Integer.parseInt(failed.id())).published.completeExceptionally(new IllegalStateException(
+                                "Message not published to %s: %s %s".formatted(topicArn, failed.code(), failed.message())));
+                    }
+                })
+                .handle((response, err) -> null);
+    }
+
+    private PublishBatchRequest publishBatchRequest(String topicArn, List<Pending> batch) {
+        final var entries = new ArrayList<PublishBatchRequestEntry>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            final var entry = PublishBatchRequestEntry
+                    .builder()
+                    .id(String.valueOf(i))
+                    .subject(batch.get(i).subject)
+                    .message(batch.get(i).message)
+                    .messageAttributes(batch.get(i).attributes);
+            if (topology == Topology.FIFO) {
+                // Entries keep their order within the batch, so the events of a group stay in publish order
+                entry.messageGroupId(batch.get(i).orderId);
+                // Republishing the same event is then deduplicated by SNS, not only by the consumer
+                if (batch.get(i).eventId != null) {
+                    entry.messageDeduplicationId(batch.get(i).eventId);
+                }
+            }
+            entries.add(entry.build());
+        }
+
+        return PublishBatchRequest
+                .builder()
+                .topicArn(topicArn)
+                .publishBatchRequestEntries(entries)
+                .build();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(CLOSE_GRACE_SECONDS, TimeUnit.SECONDS);
+            flush();
+            CompletableFuture.allOf(unpublished.toArray(new CompletableFuture<?>[0])).get(CLOSE_GRACE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ignored) {
+            // Failed messages are reported through their own future, the rest is failed below
+        }
+        scheduler.shutdownNow();
+        final var closedErr = new IllegalStateException("Publisher closed before the message was published");
+        List.copyOf(unpublished).forEach(published -> published.completeExceptionally(closedErr));
+        snsClient.close();
+    }
+
+    private String body(Order value) {
+        return transportMode == TransportMode.BINARY ? binaryCodec.encodeBase64(value) : jsonParser.toJson(value);
+    }
+
+    /**
+     * What the message counts towards the batch limit: its body and every attribute's name, type and value, with
+     * the subject on top.
+     */
+    private static int sizeOf(String subject, String message, Map<String, MessageAttributeValue> attributes) {
+        int size = utf8Length(subject) + utf8Length(message);
+        for (final var attribute : attributes.entrySet()) {
+            size += utf8Length(attribute.getKey())
+                    + utf8Length(attribute.getValue().dataType())
+                    + utf8Length(attribute.getValue().stringValue());
+        }
+        return size;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private record Pending(String subject,
+                           String message,
+                           Map<String, MessageAttributeValue> attributes,
+                           int size,
+                           String orderId,
+                           String eventId,
+                           CompletableFuture<String> published) {
+    }
+
+    private static final class TopicBuffer {
+        private final String arn;
+        private final List<Pending> pending = new ArrayList<>(MAX_BATCH_SIZE);
+        private int pendingBytes;
+        private long oldestPendingAt;
+        private CompletableFuture<Void> sending = CompletableFuture.completedFuture(null);
+
+        private TopicBuffer(String arn) {
+            this.arn = arn;
+        }
+
+        private List<Pending> drain() {
+            final var batch = List.copyOf(pending);
+            pending.clear();
+            pendingBytes = 0;
+            return batch;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.wfuertes.infra.aws;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.wfuertes.infra.codec.BinaryEventCodec;
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.json.JsonParser;
+
+import java.io.IOException;
+
+/**
+ * Decodes the event carried by an SNS notification envelope in a single pass: the envelope is walked with a
+ * token parser and the {@code Message} text is decoded straight from the parser's buffer with the cached
+ * reader of the event class, without materialising the envelope or the message as objects or strings.
+ * <p>
+ * Bodies delivered raw are decoded as {@code transportMode} publishes them. Whatever can't be decoded fails with
+ * an {@link IllegalArgumentException}.
+ */
+class SnsEnvelopeDecoder {
+
+    private final JsonParser jsonParser;
+    private final TransportMode transportMode;
+    private final BinaryEventCodec binaryCodec = new BinaryEventCodec();
+
+    SnsEnvelopeDecoder(JsonParser jsonParser, TransportMode transportMode) {
+        this.jsonParser = jsonParser;
+        this.transportMode = transportMode;
+    }
+
+    /**
+     * The event of a body delivered without envelope: base64 of its binary encoding, or its JSON.
+     */
+    <T extends Order> T decodeRaw(String body, Class<T> clazz) {
+        try {
+            return transportMode == TransportMode.BINARY
+                    ? binaryCodec.decodeBase64(body, clazz)
+                    : jsonParser.fromJson(body, clazz);
+        } catch (RuntimeException err) {
+            throw new IllegalArgumentException("The message body is not a valid %s".formatted(clazz.getSimpleName()), err);
+        }
+    }
+
+    <T> T decode(String body, String expectedSubject, Class<T> clazz) {
+        String subject = null;
+        T event = null;
+        try (final var parser = jsonParser.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("The message body is not an SNS envelope");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var field = parser.getCurrentName();
+                final var value = parser.nextToken();
+                if ("Subject".equals(field) && value == JsonToken.VALUE_STRING) {
+                    subject = parser.getText();
+                } else if ("Message".equals(field) && value == JsonToken.VALUE_STRING) {
+                    event = decodeMessage(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), clazz);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException err) {
+            throw new IllegalArgumentException("The message body is not an SNS envelope", err);
+        }
+
+        if (!expectedSubject.equals(subject)) {
+            throw new IllegalArgumentException("The event %s is not handled by queue %s".formatted(subject, expectedSubject));
+        }
+        if (event == null) {
+            throw new IllegalArgumentException("The SNS envelope has no Message");
+        }
+        return event;
+    }
+
+    private <T> T decodeMessage(char[] chars, int offset, int length, Class<T> clazz) throws IOException {
+        try {
+            // A message that was published as a JSON string holds the event JSON one escaping level deeper
+            if (length > 0 && chars[offset] == '"') {
+                try (final var parser = jsonParser.createParser(chars, offset, length)) {
+                    parser.nextToken();
+                    return jsonParser.fromJson(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), clazz);
+                }
+            }
+            return jsonParser.fromJson(chars, offset, length, clazz);
+        } catch (RuntimeException err) {
+            throw new IllegalArgumentException("The SNS envelope Message is not a valid %s".formatted(clazz.getSimpleName()), err);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.wfuertes.infra.aws;
 
+import com.wfuertes.infra.events.EventTypeRegistry;
+import com.wfuertes.infra.events.Order;
 import com.wfuertes.infra.json.JsonParser;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.CreateTopicRequest;
+import software.amazon.awssdk.services.sns.model.MessageAttributeValue;
 import software.amazon.awssdk.services.sns.model.PublishRequest;
 
 import java.net.URI;
@@ -12,20 +15,31 @@ import java.util.List;
 import java.util.Map;
 
 public class SnsPublisher {
-    private static final String LOCAL_ENDPOINT = "http://localhost:4566";
+    static final String LOCAL_ENDPOINT = "http://localhost:4566";
 
     public static final String ORDER_CREATED = "OrderCreated";
     public static final String ORDER_DISCOUNT = "OrderDiscount";
     public static final String ORDER_OFFER = "OrderOffer";
     public static final String ORDER_COMPLETED = "OrderCompleted";
-    private static final List<String> TOPICS = List.of(ORDER_CREATED, ORDER_DISCOUNT, ORDER_OFFER, ORDER_COMPLETED);
+    static final List<String> TOPICS = List.of(ORDER_CREATED, ORDER_DISCOUNT, ORDER_OFFER, ORDER_COMPLETED);
+    public static final String ORDER_EVENTS_FIFO = "OrderEvents.fifo";
+    /**
+     * Epoch millis at which the event was handed to the publisher, to measure end-to-end freshness.
+     */
+    public static final String PUBLISHED_AT_ATTRIBUTE = "publishedAt";
 
     private final SnsClient snsClient;
     private final Map<String, String> topicArn = new HashMap<>();
     private final JsonParser jsonParser;
+    private final Topology topology;
 
     public SnsPublisher(JsonParser jsonParser) {
+        this(jsonParser, Topology.FANOUT);
+    }
+
+    public SnsPublisher(JsonParser jsonParser, Topology topology) {
         this.jsonParser = jsonParser;
+        this.topology = topology;
         this.snsClient = SnsClient
                 .builder()
                 .credentialsProvider(AwsCredentialsProviderFactory.create())
@@ -33,20 +47,60 @@ public class SnsPublisher {
                 .region(Region.US_EAST_1)
                 .build();
 
-        for (final var topicName : TOPICS) {
-            final var response = snsClient.createTopic(CreateTopicRequest.builder().name(topicName).build());
+        for (final var topicName : topics(topology)) {
+            final var response = snsClient.createTopic(createTopicRequest(topicName));
             topicArn.put(topicName, response.topicArn());
             System.out.printf("Publisher:Topic[%s] -> %s", topicName, response.topicArn());
         }
     }
 
-    public void publish(String topicName, Object value) {
+    static List<String> topics(Topology topology) {
+        return topology == Topology.FIFO ? List.of(ORDER_EVENTS_FIFO) : TOPICS;
+    }
+
+    /**
+     * The topic a message for {@code topicName} is actually published to.
+     */
+    static String physicalTopic(Topology topology, String topicName) {
+        return topology == Topology.FIFO ? ORDER_EVENTS_FIFO : topicName;
+    }
+
+    static CreateTopicRequest createTopicRequest(String topicName) {
+        final var request = CreateTopicRequest.builder().name(topicName);
+        if (topicName.endsWith(".fifo")) {
+            request.attributes(Map.of("FifoTopic", "true", "ContentBasedDeduplication", "true"));
+        }
+        return request.build();
+    }
+
+    static Map<String, MessageAttributeValue> messageAttributes(String eventType, long publishedAt) {
+        return Map.of(
+                EventTypeRegistry.EVENT_TYPE_ATTRIBUTE, MessageAttributeValue
+                        .builder()
+                        .dataType("String")
+                        .stringValue(eventType)
+                        .build(),
+                PUBLISHED_AT_ATTRIBUTE, MessageAttributeValue
+                        .builder()
+                        .dataType("Number")
+                        .stringValue(String.valueOf(publishedAt))
+                        .build());
+    }
+
+    public void publish(String topicName, Order value) {
         final var json = jsonParser.toJson(value);
-        snsClient.publish(PublishRequest
+        final var request = PublishRequest
                 .builder()
                 .subject(topicName)
                 .message(json)
-                .topicArn(topicArn.get(topicName))
-                .build());
+                .messageAttributes(messageAttributes(EventTypeRegistry.typeOf(value), System.currentTimeMillis()))
+                .topicArn(topicArn.get(physicalTopic(topology, topicName)));
+        if (topology == Topology.FIFO) {
+            request.messageGroupId(value.orderId());
+            if (value.eventId() != null) {
+                request.messageDeduplicationId(value.eventId());
+            }
+        }
+        snsClient.publish(request.build());
     }
 }
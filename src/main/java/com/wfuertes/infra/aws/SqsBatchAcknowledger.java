@@ -0,0 +1,147 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the receipt handles of successfully handled messages and deletes them with
+ * {@code DeleteMessageBatch}, flushing when a full batch is pending or when the oldest
+ * pending acknowledgement is older than {@code maxDelay}. Once closed, an acknowledgement is deleted right away.
+ */
+public class SqsBatchAcknowledger implements AutoCloseable {
+    public static final int MAX_BATCH_SIZE = 10;
+
+    private final SqsClient sqsClient;
+    private final String queueUrl;
+    private final String queueName;
+    private final Stage deletes = Metrics.global().stage(Metrics.SQS_DELETE);
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final List<Message> pending = new ArrayList<>(MAX_BATCH_SIZE);
+    private long oldestPendingAt;
+    private boolean closed;
+
+    public SqsBatchAcknowledger(SqsClient sqsClient, String queueUrl, Duration maxDelay) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.queueName = queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "sqs-ack-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var period = Math.max(1L, maxDelay.toMillis() / 2);
+        this.scheduler.scheduleAtFixedRate(this::flushIfDue, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void acknowledge(Message message) {
+        List<Message> batch = null;
+        synchronized (pending) {
+            if (closed) {
+                batch = List.of(message);
+            } else {
+                if (pending.isEmpty()) {
+                    oldestPendingAt = System.nanoTime();
+                }
+                pending.add(message);
+                if (pending.size() >= MAX_BATCH_SIZE) {
+                    batch = drain();
+                }
+            }
+        }
+        if (batch != null) {
+            delete(batch);
+        }
+    }
+
+    public void flush() {
+        final List<Message> batch;
+        synchronized (pending) {
+            batch = drain();
+        }
+        delete(batch);
+    }
+
+    private void flushIfDue() {
+        final List<Message> batch;
+        synchronized (pending) {
+            if (pending.isEmpty() || System.nanoTime() - oldestPendingAt < maxDelayNanos) {
+                return;
+            }
+            batch = drain();
+        }
+        delete(batch);
+    }
+
+    private List<Message> drain() {
+        final var batch = List.copyOf(pending);
+        pending.clear();
+        return batch;
+    }
+
+    private void delete(List<Message> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final var entries = new ArrayList<DeleteMessageBatchRequestEntry>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            entries.add(DeleteMessageBatchRequestEntry
+                    .builder()
+                    .id(String.valueOf(i))
+                    .receiptHandle(batch.get(i).receiptHandle())
+                    .build());
+        }
+
+        try {
+            final var response = deletes.time(queueName, () -> sqsClient.deleteMessageBatch(DeleteMessageBatchRequest
+                    .builder()
+                    .queueUrl(queueUrl)
+                    .entries(entries)
+                    .build()));
+
+            // A failed delete only means the message becomes visible again and gets redelivered
+            for (final var failed : response.failed()) {
+                final var message = batch.get(Integer.parseInt(failed.id()));
+                System.out.printf("Consumer:Ack[%s] message %s not deleted: %s %s%n",
+                        queueUrl, message.messageId(), failed.code(), failed.message());
+            }
+        } catch (Exception err) {
+            for (final var message : batch) {
+                System.out.printf("Consumer:Ack[%s] message %s not deleted: %s%n", queueUrl, message.messageId(), err.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lets a flush in progress finish and deletes whatever is still pending.
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(maxDelayNanos, TimeUnit.NANOSECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -1,7 +1,12 @@
 package com.wfuertes.infra.aws;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wfuertes.infra.concurrent.AdaptiveLimiter;
+import com.wfuertes.infra.concurrent.KeyedExecutor;
+import com.wfuertes.infra.events.EventTypeRegistry;
+import com.wfuertes.infra.events.Order;
 import com.wfuertes.infra.json.JsonParser;
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.sns.SnsClient;
 import software.amazon.awssdk.services.sns.model.SubscribeRequest;
@@ -9,14 +14,28 @@ import software.amazon.awssdk.services.sqs.SqsClient;
 import software.amazon.awssdk.services.sqs.model.*;
 
 import java.net.URI;
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-public class SqsConsumer {
+/**
+ * Consumes the order event queues: one long-polling loop per registered event type on a shared pool, each
+ * dispatching into the {@link KeyedExecutor} with its own bound on messages in flight.
+ */
+public class SqsConsumer implements AutoCloseable {
 
     private static final String LOCAL_ENDPOINT = "http://localhost:4566";
 
@@ -24,14 +43,76 @@ public class SqsConsumer {
     public static final String ORDER_DISCOUNT = "OrderDiscount";
     public static final String ORDER_OFFER = "OrderOffer";
     public static final String ORDER_COMPLETED = "OrderCompleted";
-    private static final List<String> TOPICS = List.of(ORDER_CREATED, ORDER_DISCOUNT, ORDER_OFFER, ORDER_COMPLETED);
+    private static final Duration ACK_MAX_DELAY = Duration.ofMillis(500);
+    private static final int RECEIVE_WAIT_SECONDS = 20;
+    private static final Duration VISIBILITY_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration MAX_VISIBILITY_EXTENSION = Duration.ofMinutes(10);
+    private static final int SHUTDOWN_GRACE_SECONDS = 10;
+    private static final Duration RECEIVE_ERROR_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration BACKPRESSURE_CHECK = Duration.ofSeconds(1);
+    private static final Duration LAG_SAMPLE_PERIOD = Duration.ofSeconds(10);
+    private static final int IN_PROCESS_ATTEMPTS = 3;
+    private static final Duration IN_PROCESS_BACKOFF = Duration.ofMillis(100);
+    private static final Duration RETRY_BASE_DELAY = Duration.ofSeconds(5);
+    private static final Duration RETRY_MAX_DELAY = Duration.ofMinutes(15);
+    private static final int MAX_RECEIVE_COUNT = 10;
+    private static final String SENT_TIMESTAMP = "SentTimestamp";
+    private static final String FIRST_RECEIVE_TIMESTAMP = "ApproximateFirstReceiveTimestamp";
 
-    private final JsonParser jsonParser;
+    private final SnsEnvelopeDecoder envelopeDecoder;
+    private final EventTypeRegistry eventTypes;
+    private final TransportMode transportMode;
+    private final Topology topology;
     private final SqsClient sqsClient;
     private final Map<String, String> queueUrl = new HashMap<>();
+    private final Map<String, String> deadLetterQueueUrl = new HashMap<>();
+    private final KeyedExecutor dispatcher;
+    private final int defaultMaxInFlight;
+    private final AdaptiveLimiter backpressure;
+    private final Stage receives = Metrics.global().stage(Metrics.SQS_RECEIVE);
+    private final Stage envelopeDecodes = Metrics.global().stage(Metrics.SQS_ENVELOPE_DECODE);
+    private final Stage decodes = Metrics.global().stage(Metrics.SQS_DECODE);
+    private final Stage handles = Metrics.global().stage(Metrics.SQS_HANDLE);
+    private final Stage queueWaits = Metrics.global().stage(Metrics.SQS_QUEUE_WAIT);
+    private final Stage sentToApplied = Metrics.global().stage(Metrics.FRESHNESS_SENT_TO_APPLIED);
+    private final Stage publishedToApplied = Metrics.global().stage(Metrics.FRESHNESS_PUBLISHED_TO_APPLIED);
+    private QueueLagMonitor lagMonitor;
+    private final Map<String, QueueWorker> workers = new LinkedHashMap<>();
+    private final AtomicInteger pollerCount = new AtomicInteger();
+    private volatile boolean running = true;
+    private boolean started;
+    private ExecutorService pollers;
 
-    public SqsConsumer(JsonParser jsonParser) {
-        this.jsonParser = jsonParser;
+    public SqsConsumer(JsonParser jsonParser,
+                       EventTypeRegistry eventTypes,
+                       TransportMode transportMode,
+                       Topology topology,
+                       KeyedExecutor dispatcher,
+                       int defaultMaxInFlight) {
+        this(jsonParser, eventTypes, transportMode, topology, dispatcher, defaultMaxInFlight, AdaptiveLimiter.unlimited());
+    }
+
+    /**
+     * Stops receiving while more handled events wait on {@code backpressure} than it lets through, so messages
+     * stay in the queue rather than piling up in memory when the table slows down.
+     */
+    public SqsConsumer(JsonParser jsonParser,
+                       EventTypeRegistry eventTypes,
+                       TransportMode transportMode,
+                       Topology topology,
+                       KeyedExecutor dispatcher,
+                       int defaultMaxInFlight,
+                       AdaptiveLimiter backpressure) {
+        if (topology == Topology.FIFO && !transportMode.rawDelivery()) {
+            throw new IllegalArgumentException("The FIFO topology needs raw message delivery to tell the event types apart");
+        }
+        this.topology = topology;
+        this.envelopeDecoder = new SnsEnvelopeDecoder(jsonParser, transportMode);
+        this.eventTypes = eventTypes;
+        this.transportMode = transportMode;
+        this.dispatcher = dispatcher;
+        this.defaultMaxInFlight = defaultMaxInFlight;
+        this.backpressure = backpressure;
         try (final SnsClient snsClient = SnsClient.builder()
                 .credentialsProvider(AwsCredentialsProviderFactory.create())
                 .endpointOverride(URI.create(LOCAL_ENDPOINT))
@@ -45,13 +126,13 @@ public class SqsConsumer {
                     .region(Region.US_EAST_1)
                     .build();
 
-            for (final var topicName : TOPICS) {
+            for (final var topicName : SnsPublisher.topics(topology)) {
                 // Create or Get Queue
                 final var queueResponse = sqsClient.createQueue(
                         CreateQueueRequest
                                 .builder()
                                 .queueName(topicName)
-                                .attributes(Map.of(QueueAttributeName.VISIBILITY_TIMEOUT, "30"))
+                                .attributes(queueAttributes(topicName))
                                 .build()
                 );
                 final var queueAttributes = sqsClient.getQueueAttributes(
@@ -70,65 +151,462 @@ public class SqsConsumer {
                         .protocol("sqs")
                         .endpoint(queueArn)
                         .topicArn(topicArn)
-                        .attributes(Map.of("RawMessageDelivery", "false"))
+                        .attributes(Map.of("RawMessageDelivery", String.valueOf(transportMode.rawDelivery())))
                         .build();
 
                 // Create Subscription
                 snsClient.subscribe(subscription);
                 queueUrl.put(topicName, queueResponse.queueUrl());
+                deadLetterQueueUrl.put(topicName, createDeadLetterQueue(topicName, queueResponse.queueUrl()));
             }
         }
     }
 
-    public <T> void consume(String queueName, Consumer<T> consumer, Class<T> clazz) {
-        while (true) {
+    /**
+     * Creates the queue's dead-letter queue and points its redrive policy at it, as a safety net for messages
+     * that keep coming back without the consumer ever dead-lettering them itself.
+     */
+    private String createDeadLetterQueue(String queueName, String url) {
+        final var deadLetterQueueName = deadLetterQueueName(queueName);
+        final var deadLetterUrl = sqsClient.createQueue(CreateQueueRequest
+                .builder()
+                .queueName(deadLetterQueueName)
+                .attributes(deadLetterQueueName.endsWith(".fifo")
+                        ? Map.of(QueueAttributeName.FIFO_QUEUE, "true")
+                        : Map.of())
+                .build()).queueUrl();
+        final var deadLetterArn = sqsClient.getQueueAttributes(GetQueueAttributesRequest
+                        .builder()
+                        .queueUrl(deadLetterUrl)
+                        .attributeNames(QueueAttributeName.QUEUE_ARN)
+                        .build())
+                .attributes()
+                .get(QueueAttributeName.QUEUE_ARN);
+        sqsClient.setQueueAttributes(SetQueueAttributesRequest
+                .builder()
+                .queueUrl(url)
+                .attributes(Map.of(QueueAttributeName.REDRIVE_POLICY,
+                        "{\"deadLetterTargetArn\":\"%s\",\"maxReceiveCount\":\"%d\"}".formatted(deadLetterArn, MAX_RECEIVE_COUNT)))
+                .build());
+        return deadLetterUrl;
+    }
 
-            final var request = ReceiveMessageRequest
-                    .builder()
-                    .queueUrl(queueUrl.get(queueName))
-                    .maxNumberOfMessages(1)
-                    .waitTimeSeconds(20)
-                    .build();
-            final var response = sqsClient.receiveMessage(request);
+    /**
+     * {@code OrderCreated-dlq}, or {@code OrderEvents-dlq.fifo} since a FIFO queue name must end with .fifo.
+     */
+    static String deadLetterQueueName(String queueName) {
+        return queueName.endsWith(".fifo")
+                ? queueName.substring(0, queueName.length() - ".fifo".length()) + "-dlq.fifo"
+                : queueName + "-dlq";
+    }
 
-            if (!response.hasMessages()) {
-                return;
+    private static Map<QueueAttributeName, String> queueAttributes(String queueName) {
+        final var visibilityTimeout = String.valueOf(VISIBILITY_TIMEOUT.toSeconds());
+        if (!queueName.endsWith(".fifo")) {
+            return Map.of(QueueAttributeName.VISIBILITY_TIMEOUT, visibilityTimeout);
+        }
+        return Map.of(
+                QueueAttributeName.VISIBILITY_TIMEOUT, visibilityTimeout,
+                QueueAttributeName.FIFO_QUEUE, "true",
+                QueueAttributeName.CONTENT_BASED_DEDUPLICATION, "true");
+    }
+
+    /**
+     * Registers the handler of one event type with at most {@code maxInFlight} of its messages being handled at
+     * once. With the FIFO topology every event type shares one queue, whose bound is the largest registered one.
+     */
+    public <T extends Order> SqsConsumer register(Class<T> eventType, Function<T, CompletableFuture<Void>> handler, int maxInFlight) {
+        return register(eventType, new Handler(events -> handler.apply(eventType.cast(events.get(0))), false), maxInFlight);
+    }
+
+    public <T extends Order> SqsConsumer register(Class<T> eventType, Function<T, CompletableFuture<Void>> handler) {
+        return register(eventType, handler, defaultMaxInFlight);
+    }
+
+    /**
+     * Registers one handler for several event types that receives, per received batch, all the events of an
+     * order together in delivery order; their messages are acknowledged together once it completes.
+     */
+    public SqsConsumer registerCoalesced(List<Class<? extends Order>> eventTypes, Function<List<Order>, CompletableFuture<Void>> handler) {
+        final var coalesced = new Handler(handler, true);
+        for (final var eventType : eventTypes) {
+            register(eventType, coalesced, defaultMaxInFlight);
+        }
+        return this;
+    }
+
+    private synchronized SqsConsumer register(Class<? extends Order> eventType, Handler handler, int maxInFlight) {
+        final var queueName = SnsPublisher.physicalTopic(topology, eventType.getSimpleName());
+        if (!queueUrl.containsKey(queueName)) {
+            throw new IllegalArgumentException("No queue for event type %s".formatted(eventType.getSimpleName()));
+        }
+        if (started) {
+            throw new IllegalStateException("Handlers must be registered before the consumer starts");
+        }
+        final var worker = workers.computeIfAbsent(queueName, QueueWorker::new);
+        if (worker.handlers.putIfAbsent(eventType, handler) != null) {
+            throw new IllegalArgumentException("Event type %s already has a handler".formatted(eventType.getSimpleName()));
+        }
+        worker.maxInFlight = Math.max(worker.maxInFlight, maxInFlight);
+        return this;
+    }
+
+    /**
+     * Long-polls every registered queue until {@link #close()}; an empty poll just starts the next one.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        pollers = Executors.newFixedThreadPool(Math.max(1, workers.size()), runnable -> {
+            final var thread = new Thread(runnable, "sqs-poller-%d".formatted(pollerCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        final var polledQueues = new LinkedHashMap<String, String>();
+        workers.keySet().forEach(queueName -> polledQueues.put(queueName, queueUrl.get(queueName)));
+        lagMonitor = new QueueLagMonitor(sqsClient, polledQueues, LAG_SAMPLE_PERIOD, Metrics.global());
+        for (final var worker : workers.values()) {
+            pollers.execute(worker::poll);
+        }
+    }
+
+    /**
+     * Stops polling, then waits for the messages already received to be handled and acknowledged.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (pollers != null) {
+            pollers.shutdown();
+            try {
+                if (!pollers.awaitTermination(RECEIVE_WAIT_SECONDS + SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                    pollers.shutdownNow();
+                }
+            } catch (InterruptedException err) {
+                pollers.shutdownNow();
+                Thread.currentThread().interrupt();
             }
+        }
+        if (lagMonitor != null) {
+            lagMonitor.close();
+        }
+        sqsClient.close();
+    }
 
-            response
-                    .messages()
-                    .stream()
-                    .findFirst()
-                    .ifPresent(message -> {
-                        final var body = jsonParser.fromJson(message.body(), MessageBody.class);
-                        try {
-                            if (!queueName.equals(body.subject)) {
-                                throw new IllegalArgumentException("The event %s is not handled by queue %s".formatted(body.subject, queueName));
-                            }
+    private final class QueueWorker {
+        private final String queueName;
+        private final Map<Class<? extends Order>, Handler> handlers = new HashMap<>();
+        private int maxInFlight;
 
-                            var content = URLDecoder.decode(body.message, StandardCharsets.UTF_8);
-                            if (content.startsWith("\"") && content.endsWith("\"")) {
-                                content = content.substring(1, content.length() - 1);
-                                content = content.replace("\\", "");
-                            }
+        QueueWorker(String queueName) {
+            this.queueName = queueName;
+        }
+
+        void poll() {
+            final var url = queueUrl.get(queueName);
+            final var inFlight = new Semaphore(maxInFlight);
+            final var failures = new SqsFailureHandler(sqsClient, queueName, url, deadLetterQueueUrl.get(queueName),
+                    RETRY_BASE_DELAY, RETRY_MAX_DELAY);
+            // Declared last so it is closed first, giving back what is still in flight before the final flush
+            try (final var acknowledger = new SqsBatchAcknowledger(sqsClient, url, ACK_MAX_DELAY);
+                 final var tracker = new SqsInFlightTracker(sqsClient, url, VISIBILITY_TIMEOUT, MAX_VISIBILITY_EXTENSION)) {
+                final var request = ReceiveMessageRequest
+                        .builder()
+                        .queueUrl(url)
+                        .maxNumberOfMessages(SqsBatchAcknowledger.MAX_BATCH_SIZE)
+                        .messageAttributeNames(EventTypeRegistry.EVENT_TYPE_ATTRIBUTE, SnsPublisher.PUBLISHED_AT_ATTRIBUTE)
+                        .attributeNamesWithStrings(SENT_TIMESTAMP, FIRST_RECEIVE_TIMESTAMP,
+                                SqsFailureHandler.RECEIVE_COUNT, SqsFailureHandler.MESSAGE_GROUP_ID)
+                        .waitTimeSeconds(RECEIVE_WAIT_SECONDS)
+                        .build();
+
+                while (running) {
+                    try {
+                        if (!backpressure.awaitCapacity(BACKPRESSURE_CHECK)) {
+                            continue;
+                        }
+                    } catch (InterruptedException err) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
 
-                            final var event = jsonParser.fromJson(content, clazz);
-                            consumer.accept(event);
-                            // Doing the acknowledgement
-                            sqsClient.deleteMessage(DeleteMessageRequest
-                                    .builder()
-                                    .queueUrl(queueUrl.get(queueName))
-                                    .receiptHandle(message.receiptHandle())
-                                    .build());
+                    final List<Message> messages;
+                    try {
+                        messages = receives.time(queueName, () -> sqsClient.receiveMessage(request)).messages();
+                        lagMonitor.received(queueName, oldestSentAt(messages));
+                        messages.forEach(tracker::track);
+                    } catch (Exception err) {
+                        if (!running) {
+                            break;
+                        }
+                        System.out.printf("Consumer:Queue[%s] receive failed: %s%n", queueName, err.getMessage());
+                        sleep(RECEIVE_ERROR_BACKOFF);
+                        continue;
+                    }
+
+                    // On a FIFO queue a failed event must hold back the later events of its order in this batch,
+                    // they are given back and only redelivered after it
+                    final var groupTails = topology == Topology.FIFO
+                            ? new HashMap<String, CompletableFuture<Void>>()
+                            : null;
+
+                    // A coalescing handler gets every event of an order in the batch at once, any other one event each
+                    final var groups = new LinkedHashMap<Object, Group>();
+                    for (final var message : messages) {
+                        final Order event;
+                        final Handler handler;
+                        try {
+                            event = decode(queueName, message, handlers.keySet());
+                            handler = handlers.get(event.getClass());
                         } catch (Exception err) {
-                            System.out.println(err.getMessage());
-                            throw new RuntimeException(err);
+                            // Undecodable or unexpected, it would fail the same way on every delivery
+                            tracker.untrack(message);
+                            failures.deadLetter(message, err);
+                            continue;
                         }
-                    });
+                        final Object groupKey = handler.coalescing() ? new GroupKey(event.orderId(), handler) : message.messageId();
+                        groups.computeIfAbsent(groupKey, ignored -> new Group(event.orderId(), handler)).add(message, event);
+                    }
+
+                    for (final var group : groups.values()) {
+                        final var permits = Math.min(group.messages.size(), maxInFlight);
+                        inFlight.acquireUninterruptibly(permits);
+                        final var previous = groupTails == null ? null : groupTails.get(group.orderId);
+                        final var handled = previous == null
+                                ? dispatcher.submitAsync(group.orderId, () -> handleWithRetry(group))
+                                : previous.handle((ignored, err) -> err == null
+                                        ? dispatcher.submitAsync(group.orderId, () -> handleWithRetry(group))
+                                        : CompletableFuture.<Void>failedFuture(new PrecedingEventFailed(group.orderId)))
+                                .thenCompose(Function.identity());
+                        if (groupTails != null) {
+                            groupTails.put(group.orderId, handled);
+                        }
+                        handled.whenComplete((ignored, err) -> {
+                            final var appliedAt = System.currentTimeMillis();
+                            try {
+                                for (int i = 0; i < group.messages.size(); i++) {
+                                    final var message = group.messages.get(i);
+                                    final var failure = err == null ? null : group.failureOf(i, err);
+                                    // Untracked first so a heartbeat cannot override the visibility set below
+                                    tracker.untrack(message);
+                                    if (failure == null) {
+                                        acknowledger.acknowledge(message);
+                                        recordFreshness(message, EventTypeRegistry.typeOf(group.events.get(i)), appliedAt);
+                                    } else if (FailureClassifier.rootOf(failure) instanceof PrecedingEventFailed) {
+                                        failures.release(message);
+                                    } else {
+                                        failures.failed(message, failure);
+                                    }
+                                }
+                            } finally {
+                                // Only once acknowledged, the drain below must not close the acknowledger before
+                                inFlight.release(permits);
+                            }
+                        });
+                    }
+                }
+
+                // Let the dispatched events finish so their acknowledgements are flushed on close, whatever does not
+                // finish in time is released by the tracker
+                try {
+                    inFlight.tryAcquire(maxInFlight, SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException err) {
+                    Thread.currentThread().interrupt();
+                }
+            }
         }
     }
 
-    private record MessageBody(@JsonProperty("Subject") String subject,
-                               @JsonProperty("Message") String message) {
+    private record Handler(Function<List<Order>, CompletableFuture<Void>> handle, boolean coalescing) {
+    }
+
+    private record GroupKey(String orderId, Handler handler) {
+    }
+
+    private static final class PrecedingEventFailed extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        PrecedingEventFailed(String orderId) {
+            super("An earlier event of order %s failed".formatted(orderId), null, false, false);
+        }
+    }
+
+    private static final class Group {
+        private final String orderId;
+        private final Handler handler;
+        private final List<Message> messages = new ArrayList<>();
+        private final List<Order> events = new ArrayList<>();
+        // Once split, the failure of every event handled on its own, null when applied
+        private List<Throwable> failures;
+
+        Group(String orderId, Handler handler) {
+            this.orderId = orderId;
+            this.handler = handler;
+        }
+
+        void add(Message message, Order event) {
+            messages.add(message);
+            events.add(event);
+        }
+
+        CompletableFuture<Void> handle() {
+            return handler.handle().apply(events);
+        }
+
+        Group single(int i) {
+            final var single = new Group(orderId, handler);
+            single.add(messages.get(i), events.get(i));
+            return single;
+        }
+
+        Throwable failureOf(int i, Throwable groupFailure) {
+            return failures == null ? groupFailure : failures.get(i);
+        }
+    }
+
+    /**
+     * Time spent waiting in the queue, and from SQS accepting (or the publisher sending) the event until it is
+     * applied; publishedAt is only present with raw delivery.
+     */
+    private void recordFreshness(Message message, String eventType, long appliedAt) {
+        final var sentAt = millisAttribute(message.attributesAsStrings().get(SENT_TIMESTAMP));
+        final var firstReceivedAt = millisAttribute(message.attributesAsStrings().get(FIRST_RECEIVE_TIMESTAMP));
+        final var publishedAt = message.messageAttributes().get(SnsPublisher.PUBLISHED_AT_ATTRIBUTE);
+        if (sentAt > 0) {
+            sentToApplied.record(eventType, TimeUnit.MILLISECONDS.toNanos(appliedAt - sentAt));
+            if (firstReceivedAt > 0) {
+                queueWaits.record(eventType, TimeUnit.MILLISECONDS.toNanos(firstReceivedAt - sentAt));
+            }
+        }
+        if (publishedAt != null) {
+            final var publishedAtMillis = millisAttribute(publishedAt.stringValue());
+            if (publishedAtMillis > 0) {
+                publishedToApplied.record(eventType, TimeUnit.MILLISECONDS.toNanos(appliedAt - publishedAtMillis));
+            }
+        }
+    }
+
+    private static long oldestSentAt(List<Message> messages) {
+        long oldest = 0L;
+        for (final var message : messages) {
+            final var sentAt = millisAttribute(message.attributesAsStrings().get(SENT_TIMESTAMP));
+            if (sentAt > 0 && (oldest == 0L || sentAt < oldest)) {
+                oldest = sentAt;
+            }
+        }
+        return oldest;
+    }
+
+    private static long millisAttribute(String value) {
+        if (value == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException err) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Retries throttling, conflicts and transient errors in place a few times before the message is handed back
+     * to SQS with a delay; this only holds up the order being retried.
+     * <p>
+     * A coalesced group failing for any other reason is handled again one event at a time, so a single bad event
+     * does not take the others of its order to the dead-letter queue with it.
+     */
+    private CompletableFuture<Void> handleWithRetry(Group group) {
+        final var result = new CompletableFuture<Void>();
+        attempt(group, 1, result);
+        if (group.messages.size() == 1) {
+            return result;
+        }
+        return result
+                .handle((ignored, err) -> err == null || FailureClassifier.classify(err) == FailureClassifier.Failure.RETRYABLE
+                        ? result
+                        : handleOneByOne(group))
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Fails with the first failure once every event was handled; on a FIFO queue the events after a failed one
+     * are not handled, they would be applied out of order.
+     */
+    private CompletableFuture<Void> handleOneByOne(Group group) {
+        group.failures = new ArrayList<>(Collections.nCopies(group.messages.size(), null));
+        CompletableFuture<Void> handled = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < group.messages.size(); i++) {
+            final var index = i;
+            handled = handled
+                    .handle((ignored, err) -> err != null && topology == Topology.FIFO
+                            ? CompletableFuture.<Void>failedFuture(new PrecedingEventFailed(group.orderId))
+                            : handleWithRetry(group.single(index)))
+                    .thenCompose(Function.identity())
+                    .whenComplete((ignored, err) -> group.failures.set(index, err));
+        }
+        return handled
+                .handle((ignored, err) -> group.failures
+                        .stream()
+                        .filter(Objects::nonNull)
+                        .findFirst()
+                        .map(CompletableFuture::<Void>failedFuture)
+                        .orElseGet(() -> CompletableFuture.completedFuture(null)))
+                .thenCompose(Function.identity());
+    }
+
+    private void attempt(Group group, int attempts, CompletableFuture<Void> result) {
+        final CompletableFuture<Void> handled;
+        try {
+            handled = handle(group);
+        } catch (Throwable err) {
+            result.completeExceptionally(err);
+            return;
+        }
+        handled.whenComplete((ignored, err) -> {
+            if (err == null) {
+                result.complete(null);
+                return;
+            }
+            if (attempts >= IN_PROCESS_ATTEMPTS || FailureClassifier.classify(err) != FailureClassifier.Failure.RETRYABLE) {
+                result.completeExceptionally(err);
+                return;
+            }
+            final var delay = IN_PROCESS_BACKOFF.toMillis() << (attempts - 1);
+            CompletableFuture
+                    .delayedExecutor(delay, TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(group, attempts + 1, result));
+        });
+    }
+
+    private CompletableFuture<Void> handle(Group group) {
+        return handles.timeAsync(Metrics.eventLabel(group.events), group::handle);
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Order decode(String queueName, Message message, Set<Class<? extends Order>> handled) {
+        if (transportMode == TransportMode.ENVELOPE) {
+            // Fan-out only: the queue carries a single event type, named by the envelope subject
+            final var clazz = handled.iterator().next();
+            return envelopeDecodes.time(queueName, () -> envelopeDecoder.decode(message.body(), queueName, clazz));
+        }
+
+        final var eventType = message.messageAttributes().get(EventTypeRegistry.EVENT_TYPE_ATTRIBUTE);
+        if (eventType == null) {
+            throw new IllegalArgumentException("The message %s has no %s attribute".formatted(message.messageId(), EventTypeRegistry.EVENT_TYPE_ATTRIBUTE));
+        }
+        final var clazz = eventTypes.classOf(eventType.stringValue());
+        if (!handled.contains(clazz)) {
+            throw new IllegalArgumentException("The event %s is not handled by queue %s".formatted(eventType.stringValue(), queueName));
+        }
+        return decodes.time(eventType.stringValue(), () -> envelopeDecoder.decodeRaw(message.body(), clazz));
     }
 }
@@ -0,0 +1,129 @@
+package com.wfuertes.infra.aws;
+
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.MessageAttributeValue;
+import software.amazon.awssdk.services.sqs.model.SendMessageRequest;
+
+import java.time.Duration;
+import java.util.HashMap;
+
+/**
+ * What happens to a message whose handling failed: poison messages are moved to the dead-letter queue right away
+ * so they stop holding up anything else, any other failure is delayed with an exponential backoff through its
+ * visibility timeout, and dead-lettered by the redrive policy once received too many times.
+ */
+class SqsFailureHandler {
+    static final String FAILURE_REASON_ATTRIBUTE = "failureReason";
+    static final String MESSAGE_GROUP_ID = "MessageGroupId";
+    static final String RECEIVE_COUNT = "ApproximateReceiveCount";
+    private static final int MAX_REASON_LENGTH = 256;
+    // The longest visibility timeout SQS accepts
+    private static final long MAX_VISIBILITY_SECONDS = Duration.ofHours(12).toSeconds();
+
+    private final SqsClient sqsClient;
+    private final String queueName;
+    private final String queueUrl;
+    private final String deadLetterQueueUrl;
+    private final long retryBaseSeconds;
+    private final long retryMaxSeconds;
+
+    SqsFailureHandler(SqsClient sqsClient,
+                      String queueName,
+                      String queueUrl,
+                      String deadLetterQueueUrl,
+                      Duration retryBase,
+                      Duration retryMax) {
+        this.sqsClient = sqsClient;
+        this.queueName = queueName;
+        this.queueUrl = queueUrl;
+        this.deadLetterQueueUrl = deadLetterQueueUrl;
+        this.retryBaseSeconds = retryBase.toSeconds();
+        this.retryMaxSeconds = Math.min(retryMax.toSeconds(), MAX_VISIBILITY_SECONDS);
+    }
+
+    void failed(Message message, Throwable err) {
+        final var cause = FailureClassifier.rootOf(err);
+        if (FailureClassifier.classify(cause) == FailureClassifier.Failure.POISON) {
+            deadLetter(message, cause);
+        } else {
+            retryLater(message, cause);
+        }
+    }
+
+    /**
+     * Makes the message visible again after {@code base * 2^(receives - 1)} seconds, capped.
+     */
+    void retryLater(Message message, Throwable cause) {
+        final var receives = receiveCount(message);
+        final var delay = Math.min(retryMaxSeconds, retryBaseSeconds << Math.min(receives - 1, 20));
+        System.out.printf("Consumer:Queue[%s] message %s retried in %ds after %d receives: %s%n",
+                queueName, message.messageId(), delay, receives, cause.getMessage());
+        changeVisibility(message, delay);
+    }
+
+    /**
+     * Gives the message back at once, e.g. when it was skipped because an earlier event of its order failed.
+     */
+    void release(Message message) {
+        changeVisibility(message, 0);
+    }
+
+    void deadLetter(Message message, Throwable cause) {
+        System.out.printf("Consumer:Queue[%s] message %s dead-lettered: %s%n", queueName, message.messageId(), cause);
+        try {
+            final var attributes = new HashMap<>(message.messageAttributes());
+            attributes.put(FAILURE_REASON_ATTRIBUTE, MessageAttributeValue
+                    .builder()
+                    .dataType("String")
+                    .stringValue(truncate(String.valueOf(cause)))
+                    .build());
+            final var request = SendMessageRequest
+                    .builder()
+                    .queueUrl(deadLetterQueueUrl)
+                    .messageBody(message.body())
+                    .messageAttributes(attributes);
+            final var groupId = message.attributesAsStrings().get(MESSAGE_GROUP_ID);
+            if (groupId != null) {
+                request.messageGroupId(groupId).messageDeduplicationId(message.messageId());
+            }
+            sqsClient.sendMessage(request.build());
+            sqsClient.deleteMessage(DeleteMessageRequest
+                    .builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(message.receiptHandle())
+                    .build());
+        } catch (Exception err) {
+            // The redrive policy still moves it once it has been received too many times
+            System.out.printf("Consumer:Queue[%s] message %s not dead-lettered: %s%n", queueName, message.messageId(), err.getMessage());
+        }
+    }
+
+    private void changeVisibility(Message message, long seconds) {
+        try {
+            sqsClient.changeMessageVisibility(ChangeMessageVisibilityRequest
+                    .builder()
+                    .queueUrl(queueUrl)
+                    .receiptHandle(message.receiptHandle())
+                    .visibilityTimeout((int) seconds)
+                    .build());
+        } catch (Exception err) {
+            System.out.printf("Consumer:Queue[%s] message %s visibility not changed: %s%n", queueName, message.messageId(), err.getMessage());
+        }
+    }
+
+    private static int receiveCount(Message message) {
+        final var receives = message.attributesAsStrings().get(RECEIVE_COUNT);
+        try {
+            return receives == null ? 1 : Math.max(1, Integer.parseInt(receives));
+        } catch (NumberFormatException err) {
+            return 1;
+        }
+    }
+
+    private static String truncate(String reason) {
+        return reason.length() <= MAX_REASON_LENGTH ? reason : reason.substring(0, MAX_REASON_LENGTH);
+    }
+}
@@ -0,0 +1,197 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.metrics.Metrics;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the received messages of a queue invisible while they are being handled: every heartbeat, messages
+ * whose visibility runs out before the next one get it extended with {@code ChangeMessageVisibilityBatch}, so
+ * slow handling (e.g. under DynamoDB throttling) does not turn into duplicate deliveries.
+ * <p>
+ * A message is extended for at most {@code maxExtension}, after which SQS is left to redeliver it (counted by the
+ * {@code extensionLimitReached} gauge). Whatever is still tracked on {@link #close()} is made visible again
+ * right away.
+ */
+class SqsInFlightTracker implements AutoCloseable {
+    private final SqsClient sqsClient;
+    private final String queueName;
+    private final String queueUrl;
+    private final int visibilitySeconds;
+    private final long heartbeatNanos;
+    private final long maxExtensionNanos;
+    private final ConcurrentHashMap<String, Tracked> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder extensions = new LongAdder();
+    private final LongAdder extensionLimitReached = new LongAdder();
+    private final ScheduledExecutorService scheduler;
+
+    SqsInFlightTracker(SqsClient sqsClient, String queueUrl, Duration visibility, Duration maxExtension) {
+        this.sqsClient = sqsClient;
+        this.queueUrl = queueUrl;
+        this.queueName = queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+        this.visibilitySeconds = (int) visibility.toSeconds();
+        // Three beats per visibility timeout leave room for a slow or failed ChangeMessageVisibility call
+        this.heartbeatNanos = visibility.toNanos() / 3;
+        this.maxExtensionNanos = maxExtension.toNanos();
+        Metrics.global().gauge("sqs.%s.tracked".formatted(queueName), inFlight::size);
+        Metrics.global().gauge("sqs.%s.visibilityExtensions".formatted(queueName), extensions::sum);
+        Metrics.global().gauge("sqs.%s.extensionLimitReached".formatted(queueName), extensionLimitReached::sum);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final var thread = new Thread(runnable, "sqs-visibility-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::extendDue, heartbeatNanos, heartbeatNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void track(Message message) {
+        inFlight.put(message.messageId(), new Tracked(message, System.nanoTime()));
+    }
+
+    /**
+     * Stops extending the message, called before it is acknowledged or handed to the failure handling. Waits
+     * for a heartbeat extending it right now, so the caller's own visibility change cannot be overwritten.
+     */
+    void untrack(Message message) {
+        final var tracked = inFlight.remove(message.messageId());
+        if (tracked != null) {
+            tracked.release();
+        }
+    }
+
+    private void extendDue() {
+        final var now = System.nanoTime();
+        final var due = new ArrayList<Tracked>();
+        for (final var tracked : inFlight.values()) {
+            if (now - tracked.receivedAt >= maxExtensionNanos) {
+                if (inFlight.remove(tracked.message.messageId(), tracked)) {
+                    extensionLimitReached.increment();
+                }
+                continue;
+            }
+            // Visible again before the beat after next unless extended now
+            if (now - tracked.extendedAt + 2 * heartbeatNanos >= TimeUnit.SECONDS.toNanos(visibilitySeconds)) {
+                due.add(tracked);
+            }
+        }
+        for (int from = 0; from < due.size(); from += SqsBatchAcknowledger.MAX_BATCH_SIZE) {
+            extend(due.subList(from, Math.min(due.size(), from + SqsBatchAcknowledger.MAX_BATCH_SIZE)), now);
+        }
+    }
+
+    /**
+     * Holds the lock of every message in the batch for the whole call; those released meanwhile are left out.
+     */
+    private void extend(List<Tracked> batch, long now) {
+        final var locked = new ArrayList<Tracked>(batch.size());
+        try {
+            for (final var tracked : batch) {
+                tracked.lock.lock();
+                if (tracked.released) {
+                    tracked.lock.unlock();
+                } else {
+                    locked.add(tracked);
+                }
+            }
+            final var messages = new ArrayList<Message>(locked.size());
+            for (final var tracked : locked) {
+                tracked.extendedAt = now;
+                messages.add(tracked.message);
+            }
+            changeVisibility(messages, visibilitySeconds);
+            extensions.add(messages.size());
+        } finally {
+            locked.forEach(tracked -> tracked.lock.unlock());
+        }
+    }
+
+    private void changeVisibility(List<Message> messages, int seconds) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < messages.size(); from += SqsBatchAcknowledger.MAX_BATCH_SIZE) {
+            final var batch = messages.subList(from, Math.min(messages.size(), from + SqsBatchAcknowledger.MAX_BATCH_SIZE));
+            final var entries = new ArrayList<ChangeMessageVisibilityBatchRequestEntry>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                entries.add(ChangeMessageVisibilityBatchRequestEntry
+                        .builder()
+                        .id(String.valueOf(i))
+                        .receiptHandle(batch.get(i).receiptHandle())
+                        .visibilityTimeout(seconds)
+                        .build());
+            }
+            try {
+                final var response = sqsClient.changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest
+                        .builder()
+                        .queueUrl(queueUrl)
+                        .entries(entries)
+                        .build());
+                for (final var failed : response.failed()) {
+                    System.out.printf("Consumer:Queue[%s] message %s visibility not changed: %s %s%n",
+                            queueName, batch.get(Integer.parseInt(failed.id())).messageId(), failed.code(), failed.message());
+                }
+            } catch (Exception err) {
+                System.out.printf("Consumer:Queue[%s] visibility of %d messages not changed: %s%n", queueName, batch.size(), err.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the heartbeat and gives every message still tracked back to the queue.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(heartbeatNanos, TimeUnit.NANOSECONDS)) {
+                scheduler.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            scheduler.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        final var remaining = new ArrayList<Message>();
+        for (final var tracked : inFlight.values()) {
+            if (inFlight.remove(tracked.message.messageId(), tracked)) {
+                tracked.release();
+                remaining.add(tracked.message);
+            }
+        }
+        changeVisibility(remaining, 0);
+    }
+
+    private static final class Tracked {
+        private final Message message;
+        private final long receivedAt;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long extendedAt;
+        private boolean released;
+
+        private Tracked(Message message, long receivedAt) {
+            this.message = message;
+            this.receivedAt = receivedAt;
+            this.extendedAt = receivedAt;
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                released = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.wfuertes.infra.aws;
+
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.GetQueueUrlRequest;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.SendMessageBatchRequestEntry;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Moves dead-lettered messages back to their queue in batches of 10, e.g. once the bug that poisoned them is
+ * fixed: {@code SqsRedrive <queue> [maxMessages]}.
+ * <p>
+ * A message is only deleted from the dead-letter queue after its copy was accepted, so an interrupted redrive
+ * can send a message twice but never loses one.
+ */
+public class SqsRedrive implements AutoCloseable {
+    private static final String LOCAL_ENDPOINT = "http://localhost:4566";
+
+    private final SqsClient sqsClient;
+
+    public SqsRedrive() {
+        this.sqsClient = SqsClient
+                .builder()
+                .credentialsProvider(AwsCredentialsProviderFactory.create())
+                .endpointOverride(URI.create(LOCAL_ENDPOINT))
+                .region(Region.US_EAST_1)
+                .build();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: SqsRedrive <queue> [maxMessages]");
+            return;
+        }
+        final var maxMessages = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+        try (final var redrive = new SqsRedrive()) {
+            final var moved = redrive.redrive(args[0], maxMessages);
+            System.out.printf("Redrive:Queue[%s] %d messages moved back%n", args[0], moved);
+        }
+    }
+
+    /**
+     * Returns the number of messages moved, stopping at {@code maxMessages} or when the dead-letter queue is empty.
+     */
+    public int redrive(String queueName, int maxMessages) {
+        final var queueUrl = queueUrl(queueName);
+        final var deadLetterQueueUrl = queueUrl(SqsConsumer.deadLetterQueueName(queueName));
+        final var fifo = queueName.endsWith(".fifo");
+
+        int moved = 0;
+        while (moved < maxMessages) {
+            final var messages = sqsClient.receiveMessage(ReceiveMessageRequest
+                    .builder()
+                    .queueUrl(deadLetterQueueUrl)
+                    .maxNumberOfMessages(Math.min(SqsBatchAcknowledger.MAX_BATCH_SIZE, maxMessages - moved))
+                    .messageAttributeNames("All")
+                    .attributeNamesWithStrings(SqsFailureHandler.MESSAGE_GROUP_ID)
+                    .waitTimeSeconds(1)
+                    .build()).messages();
+            if (messages.isEmpty()) {
+                return moved;
+            }
+
+            final var sent = send(queueUrl, messages, fifo);
+            delete(deadLetterQueueUrl, sent);
+            moved += sent.size();
+            if (sent.size() < messages.size()) {
+                System.out.printf("Redrive:Queue[%s] %d messages not sent back, stopping%n", queueName, messages.size() - sent.size());
+                return moved;
+            }
+        }
+        return moved;
+    }
+
+    private List<Message> send(String queueUrl, List<Message> messages, boolean fifo) {
+        final var entries = new ArrayList<SendMessageBatchRequestEntry>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            final var message = messages.get(i);
+            final var attributes = new HashMap<>(message.messageAttributes());
+            attributes.remove(SqsFailureHandler.FAILURE_REASON_ATTRIBUTE);
+            final var entry = SendMessageBatchRequestEntry
+                    .builder()
+                    .id(String.valueOf(i))
+                    .messageBody(message.body())
+                    .messageAttributes(attributes);
+            if (fifo) {
+                entry.messageGroupId(message.attributesAsStrings().get(SqsFailureHandler.MESSAGE_GROUP_ID))
+                        .messageDeduplicationId(message.messageId());
+            }
+            entries.add(entry.build());
+        }
+
+        final var response = sqsClient.sendMessageBatch(SendMessageBatchRequest
+                .builder()
+                .queueUrl(queueUrl)
+                .entries(entries)
+                .build());
+        final var sent = new ArrayList<Message>(response.successful().size());
+        for (final var success : response.successful()) {
+            sent.add(messages.get(Integer.parseInt(success.id())));
+        }
+        for (final var failed : response.failed()) {
+            System.out.printf("Redrive: message %s not sent back: %s %s%n",
+                    messages.get(Integer.parseInt(failed.id())).messageId(), failed.code(), failed.message());
+        }
+        return sent;
+    }
+
+    private void delete(String deadLetterQueueUrl, List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        final var entries = new ArrayList<DeleteMessageBatchRequestEntry>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            entries.add(DeleteMessageBatchRequestEntry
+                    .builder()
+                    .id(String.valueOf(i))
+                    .receiptHandle(messages.get(i).receiptHandle())
+                    .build());
+        }
+        sqsClient.deleteMessageBatch(DeleteMessageBatchRequest
+                .builder()
+                .queueUrl(deadLetterQueueUrl)
+                .entries(entries)
+                .build());
+    }
+
+    private String queueUrl(String queueName) {
+        return sqsClient.getQueueUrl(GetQueueUrlRequest.builder().queueName(queueName).build()).queueUrl();
+    }
+
+    @Override
+    public void close() {
+        sqsClient.close();
+    }
+}
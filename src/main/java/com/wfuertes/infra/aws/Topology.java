@@ -0,0 +1,13 @@
+package com.wfuertes.infra.aws;
+
+public enum Topology {
+    /**
+     * One standard topic and queue per event type, no ordering between the events of an order.
+     */
+    FANOUT,
+    /**
+     * Every event goes through one FIFO topic into one FIFO queue, grouped by order id, so the events of an
+     * order are delivered in publish order while different orders are consumed in parallel.
+     */
+    FIFO
+}
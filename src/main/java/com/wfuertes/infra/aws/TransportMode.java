@@ -0,0 +1,21 @@
+package com.wfuertes.infra.aws;
+
+public enum TransportMode {
+    /**
+     * SQS receives the SNS notification envelope, the event type is its Subject.
+     */
+    ENVELOPE,
+    /**
+     * Raw message delivery: SQS receives the event payload itself, the event type is a message attribute.
+     */
+    RAW,
+    /**
+     * Raw message delivery with the event encoded by {@link com.wfuertes.infra.codec.BinaryEventCodec}, base64 in
+     * the message body since SNS and SQS only carry text.
+     */
+    BINARY;
+
+    boolean rawDelivery() {
+        return this != ENVELOPE;
+    }
+}
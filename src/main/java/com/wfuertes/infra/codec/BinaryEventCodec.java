@@ -0,0 +1,366 @@
+package com.wfuertes.infra.codec;
+
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary form of the order events, used instead of JSON on the wire and in the event items.
+ * <p>
+ * Layout: a header byte ({@code version << 4 | flags}) followed by the payload, deflated when the
+ * {@link #COMPRESSED} flag is set. The payload is the event type tag, a bitmask of the non-null fields and the
+ * fields in record order: numbers as zig-zag varints, strings as a varint kind (literal, UUID as 16 bytes or an
+ * index into {@link #INTERNED}) followed by their bytes.
+ * <p>
+ * The interned table, the type tags and the fields of an event are part of the format: only append to them, and
+ * bump {@link #VERSION} for anything else. An appended field is absent from the bitmask of older payloads, which
+ * is how the event id was added.
+ * <p>
+ * Decoding a malformed payload throws {@link IllegalArgumentException}, so does a compressed one inflating past
+ * {@value #MAX_INFLATED_SIZE} bytes.
+ */
+public class BinaryEventCodec {
+    public static final int VERSION = 1;
+    private static final int COMPRESSED = 0x01;
+    // Far above any order event, a payload inflating past it is not one
+    private static final int MAX_INFLATED_SIZE = 64 * 1024;
+
+    private static final List<String> INTERNED = List.of("DELIVERY", "PICKUP", "SUPER_10");
+    private static final Map<String, Integer> INTERNED_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < INTERNED.size(); i++) {
+            INTERNED_INDEX.put(INTERNED.get(i), i);
+        }
+    }
+
+    private static final int ORDER_CREATED = 1;
+    private static final int ORDER_DISCOUNT = 2;
+    private static final int ORDER_OFFER = 3;
+    private static final int ORDER_COMPLETED = 4;
+
+    private static final int LITERAL = 0;
+    private static final int UUID_STRING = 1;
+    private static final int INTERNED_STRING = 2;
+
+    private final int compressThreshold;
+
+    /**
+     * Never compresses; the order events are small enough that deflate rarely pays off.
+     */
+    public BinaryEventCodec() {
+        this(0);
+    }
+
+    /**
+     * Deflates payloads of at least {@code compressThreshold} bytes when that makes them smaller, 0 disables it.
+     */
+    public BinaryEventCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    public byte[] encode(Order event) {
+        final var out = new Output();
+        if (event instanceof OrderCreated orderCreated) {
+            out.header(ORDER_CREATED, orderCreated.orderId(), orderCreated.orderNumber(), orderCreated.type(), orderCreated.eventId());
+            out.string(orderCreated.orderId());
+            out.number(orderCreated.orderNumber());
+            out.string(orderCreated.type());
+            out.string(orderCreated.eventId());
+        } else if (event instanceof OrderDiscount orderDiscount) {
+            out.header(ORDER_DISCOUNT, orderDiscount.orderId(), orderDiscount.amount(), orderDiscount.eventId());
+            out.string(orderDiscount.orderId());
+            out.number(orderDiscount.amount());
+            out.string(orderDiscount.eventId());
+        } else if (event instanceof OrderOffer orderOffer) {
+            out.header(ORDER_OFFER, orderOffer.orderId(), orderOffer.amount(), orderOffer.offerType(), orderOffer.eventId());
+            out.string(orderOffer.orderId());
+            out.number(orderOffer.amount());
+            out.string(orderOffer.offerType());
+            out.string(orderOffer.eventId());
+        } else if (event instanceof OrderCompleted orderCompleted) {
+            out.header(ORDER_COMPLETED, orderCompleted.orderId(), orderCompleted.foodsTotal(), orderCompleted.taxes(), orderCompleted.eventId());
+            out.string(orderCompleted.orderId());
+            out.number(orderCompleted.foodsTotal());
+            out.number(orderCompleted.taxes());
+            out.string(orderCompleted.eventId());
+        } else {
+            throw new IllegalArgumentException("Unknown event %s".formatted(event.getClass().getSimpleName()));
+        }
+        return frame(out.toByteArray());
+    }
+
+    public Order decode(byte[] bytes) {
+        if (bytes.length == 0) {
+            throw new IllegalArgumentException("Empty event");
+        }
+        final var version = (bytes[0] & 0xFF) >>> 4;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported event encoding version %d".formatted(version));
+        }
+
+        final var payload = (bytes[0] & COMPRESSED) != 0
+                ? inflate(bytes)
+                : Arrays.copyOfRange(bytes, 1, bytes.length);
+        final var in = new Input(payload);
+        final var type = in.readByte();
+        final var present = in.readByte();
+        final var orderId = (present & 1) != 0 ? in.string() : null;
+        return switch (type) {
+            case ORDER_CREATED -> new OrderCreated(
+                    orderId,
+                    (present & 2) != 0 ? in.number() : null,
+                    (present & 4) != 0 ? in.string() : null,
+                    (present & 8) != 0 ? in.string() : null);
+            case ORDER_DISCOUNT -> new OrderDiscount(
+                    orderId,
+                    (present & 2) != 0 ? in.intNumber() : null,
+                    (present & 4) != 0 ? in.string() : null);
+            case ORDER_OFFER -> new OrderOffer(
+                    orderId,
+                    (present & 2) != 0 ? in.intNumber() : null,
+                    (present & 4) != 0 ? in.string() : null,
+                    (present & 8) != 0 ? in.string() : null);
+            case ORDER_COMPLETED -> new OrderCompleted(
+                    orderId,
+                    (present & 2) != 0 ? in.intNumber() : null,
+                    (present & 4) != 0 ? in.intNumber() : null,
+                    (present & 8) != 0 ? in.string() : null);
+            default -> throw new IllegalArgumentException("Unknown event type tag %d".formatted(type));
+        };
+    }
+
+    public <T extends Order> T decode(byte[] bytes, Class<T> clazz) {
+        final var event = decode(bytes);
+        if (!clazz.isInstance(event)) {
+            throw new IllegalArgumentException("Expected %s but got %s".formatted(clazz.getSimpleName(), event.getClass().getSimpleName()));
+        }
+        return clazz.cast(event);
+    }
+
+    public String encodeBase64(Order event) {
+        return Base64.getEncoder().encodeToString(encode(event));
+    }
+
+    public <T extends Order> T decodeBase64(String base64, Class<T> clazz) {
+        return decode(Base64.getDecoder().decode(base64), clazz);
+    }
+
+    private byte[] frame(byte[] payload) {
+        if (compressThreshold > 0 && payload.length >= compressThreshold) {
+            final var deflated = deflate(payload);
+            if (deflated.length < payload.length) {
+                return prepend(VERSION << 4 | COMPRESSED, deflated);
+            }
+        }
+        return prepend(VERSION << 4, payload);
+    }
+
+    private static byte[] prepend(int header, byte[] payload) {
+        final var framed = new byte[payload.length + 1];
+        framed[0] = (byte) header;
+        System.arraycopy(payload, 0, framed, 1, payload.length);
+        return framed;
+    }
+
+    private static byte[] deflate(byte[] payload) {
+        final var deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            final var out = new ByteArrayOutputStream(payload.length);
+            final var buffer = new byte[256];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        final var inflater = new Inflater(true);
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            final var out = new ByteArrayOutputStream(bytes.length * 2);
+            final var buffer = new byte[256];
+            while (!inflater.finished()) {
+                final var read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed event");
+                }
+                if (out.size() + read > MAX_INFLATED_SIZE) {
+                    throw new IllegalArgumentException("Compressed event inflates past %d bytes".formatted(MAX_INFLATED_SIZE));
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException err) {
+            throw new IllegalArgumentException("Corrupt compressed event", err);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static final class Output extends ByteArrayOutputStream {
+        Output() {
+            super(64);
+        }
+
+        void header(int type, Object... fields) {
+            var present = 0;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != null) {
+                    present |= 1 << i;
+                }
+            }
+            write(type);
+            write(present);
+        }
+
+        void number(Number value) {
+            if (value != null) {
+                final var longValue = value.longValue();
+                varint((longValue << 1) ^ (longValue >> 63));
+            }
+        }
+
+        void string(String value) {
+            if (value == null) {
+                return;
+            }
+            final var interned = INTERNED_INDEX.get(value);
+            if (interned != null) {
+                varint(INTERNED_STRING + interned);
+                return;
+            }
+            final var uuid = asUuid(value);
+            if (uuid != null) {
+                varint(UUID_STRING);
+                fixed64(uuid.getMostSignificantBits());
+                fixed64(uuid.getLeastSignificantBits());
+                return;
+            }
+            final var utf8 = value.getBytes(StandardCharsets.UTF_8);
+            varint(LITERAL);
+            varint(utf8.length);
+            write(utf8, 0, utf8.length);
+        }
+
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        private void fixed64(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        /**
+         * Only canonical lowercase UUIDs are packed, anything else would not read back as the same string.
+         */
+        private static UUID asUuid(String value) {
+            if (value.length() != 36 || value.charAt(8) != '-') {
+                return null;
+            }
+            try {
+                final var uuid = UUID.fromString(value);
+                return uuid.toString().equals(value) ? uuid : null;
+            } catch (IllegalArgumentException err) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated event");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long number() {
+            final var value = varint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int intNumber() {
+            final var value = number();
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Number %d out of range".formatted(value));
+            }
+            return (int) value;
+        }
+
+        /**
+         * Kind and length are checked as read, before any narrowing, so a corrupt varint cannot wrap into range.
+         */
+        String string() {
+            final var kind = varint();
+            if (kind == LITERAL) {
+                final var length = varint();
+                if (length < 0 || length > bytes.length - position) {
+                    throw new IllegalArgumentException("Truncated event");
+                }
+                final var value = new String(bytes, position, (int) length, StandardCharsets.UTF_8);
+                position += (int) length;
+                return value;
+            }
+            if (kind == UUID_STRING) {
+                return new UUID(fixed64(), fixed64()).toString();
+            }
+            if (kind < INTERNED_STRING || kind - INTERNED_STRING >= INTERNED.size()) {
+                throw new IllegalArgumentException("Unknown string kind %d".formatted(kind));
+            }
+            return INTERNED.get((int) (kind - INTERNED_STRING));
+        }
+
+        private long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                final var b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        private long fixed64() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = value << 8 | readByte();
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.wfuertes.infra.concurrent;
+
+import com.wfuertes.infra.metrics.Metrics;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the calls in flight against a backend whose capacity is not known up front, adjusting the bound AIMD
+ * style: it grows by one per window of successful calls while the limit is actually used and latency stays near
+ * its baseline, and is cut multiplicatively when the backend reports overload (e.g. DynamoDB throttling) or latency
+ * rises well above the baseline. Calls over the limit wait in FIFO order.
+ * <p>
+ * The baseline is the lowest latency seen, drifting slowly up so a lasting change of the backend is accepted.
+ */
+public class AdaptiveLimiter {
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    private static final double LATENCY_BACKOFF = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.1;
+    private static final double BASELINE_DRIFT = 0.001;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private final LongAdder overloads = new LongAdder();
+    private double limit;
+    private int inFlight;
+    private double baselineNanos;
+    private double smoothedNanos;
+    private long lastDecreaseAt;
+
+    public AdaptiveLimiter(String name, int minLimit, int initialLimit, int maxLimit) {
+        this(minLimit, initialLimit, maxLimit);
+        Metrics.global().gauge("limiter.%s.limit".formatted(name), this::limit);
+        Metrics.global().gauge("limiter.%s.inFlight".formatted(name), this::inFlight);
+        Metrics.global().gauge("limiter.%s.queued".formatted(name), this::queued);
+        Metrics.global().gauge("limiter.%s.overloads".formatted(name), overloads::sum);
+    }
+
+    private AdaptiveLimiter(int minLimit, int initialLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Expected 1 <= min <= initial <= max, got %d, %d, %d"
+                    .formatted(minLimit, initialLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.lastDecreaseAt = System.nanoTime();
+    }
+
+    /**
+     * Never holds a call back, for callers that are not limited.
+     */
+    public static AdaptiveLimiter unlimited() {
+        return new AdaptiveLimiter(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Starts {@code call} once the limit allows it; a failure matching {@code overloaded} cuts the limit.
+     */
+    public <T> CompletableFuture<T> run(Predicate<Throwable> overloaded, Supplier<CompletableFuture<T>> call) {
+        final var result = new CompletableFuture<T>();
+        final Runnable start = () -> start(overloaded, call, result);
+        final boolean now;
+        synchronized (this) {
+            now = inFlight < (int) limit;
+            if (now) {
+                inFlight++;
+            } else {
+                waiting.add(start);
+            }
+        }
+        if (now) {
+            start.run();
+        }
+        return result;
+    }
+
+    /**
+     * Blocks while more calls wait than the limit allows in flight, so a producer stops taking in work the
+     * backend cannot keep up with; returns false if that lasted longer than {@code timeout}.
+     */
+    public boolean awaitCapacity(Duration timeout) throws InterruptedException {
+        final var deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (this) {
+            while (waiting.size() >= (int) limit) {
+                final var remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
+    private <T> void start(Predicate<Throwable> overloaded, Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+        final var startedAt = System.nanoTime();
+        final CompletableFuture<T> called;
+        try {
+            called = call.get();
+        } catch (Throwable err) {
+            completed(System.nanoTime() - startedAt, false, false);
+            result.completeExceptionally(err);
+            return;
+        }
+        called.whenComplete((value, err) -> {
+            completed(System.nanoTime() - startedAt, err == null, err != null && overloaded.test(err));
+            if (err == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(err);
+            }
+        });
+    }
+
+    private void completed(long latencyNanos, boolean succeeded, boolean overload) {
+        final var next = new ArrayList<Runnable>();
+        synchronized (this) {
+            final var saturated = inFlight + waiting.size() >= (int) limit;
+            inFlight--;
+            if (overload) {
+                overloads.increment();
+                decrease(OVERLOAD_BACKOFF);
+            } else if (succeeded) {
+                adjust(latencyNanos, saturated);
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                next.add(waiting.poll());
+                inFlight++;
+            }
+            notifyAll();
+        }
+        // Off the completing thread, calls failing right away would otherwise start the whole queue recursively
+        next.forEach(CompletableFuture::runAsync);
+    }
+
+    private void adjust(long latencyNanos, boolean saturated) {
+        if (baselineNanos == 0 || latencyNanos < baselineNanos) {
+            baselineNanos = latencyNanos;
+        } else {
+            baselineNanos += (latencyNanos - baselineNanos) * BASELINE_DRIFT;
+        }
+        smoothedNanos = smoothedNanos == 0 ? latencyNanos : smoothedNanos + (latencyNanos - smoothedNanos) * SMOOTHING;
+
+        if (smoothedNanos > baselineNanos * LATENCY_TOLERANCE) {
+            decrease(LATENCY_BACKOFF);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * At most once per round trip, the calls completing right after a cut were started before it.
+     */
+    private void decrease(double factor) {
+        final var now = System.nanoTime();
+        if (now - lastDecreaseAt < smoothedNanos) {
+            return;
+        }
+        lastDecreaseAt = now;
+        limit = Math.max(minLimit, limit * factor);
+    }
+
+    public synchronized long limit() {
+        return (long) limit;
+    }
+
+    public synchronized long inFlight() {
+        return inFlight;
+    }
+
+    public synchronized long queued() {
+        return waiting.size();
+    }
+}
@@ -0,0 +1,72 @@
+package com.wfuertes.infra.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks in parallel across keys while keeping the tasks of one key strictly sequential: the
+ * asynchronous tasks of a key are chained, each started once the previous one completed, on one of a
+ * fixed number of single threaded lanes the key is hashed onto. A lane thread only starts tasks, so
+ * many keys can have a task in flight at once.
+ * <p>
+ * A failed task does not hold back the next one of its key. Once closed, new tasks fail with
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ */
+public class KeyedExecutor implements AutoCloseable {
+
+    private final ExecutorService[] lanes;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public KeyedExecutor(String name, int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("At least one lane is required, got %d".formatted(lanes));
+        }
+        this.lanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++) {
+            final var laneName = "%s-lane-%d".formatted(name, i);
+            this.lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                final var thread = new Thread(runnable, laneName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public CompletableFuture<Void> submitAsync(String key, Supplier<CompletableFuture<Void>> task) {
+        final var lane = lane(key);
+        final var next = tails.compute(key, (ignored, tail) -> {
+            final var previous = tail == null
+                    ? CompletableFuture.<Void>completedFuture(null)
+                    : tail.exceptionally(err -> null);
+            return previous.thenComposeAsync(done -> task.get(), lane);
+        });
+        next.whenComplete((ignored, err) -> tails.remove(key, next));
+        return next;
+    }
+
+    public int lanes() {
+        return lanes.length;
+    }
+
+    private ExecutorService lane(String key) {
+        return lanes[Math.floorMod(key.hashCode(), lanes.length)];
+    }
+
+    @Override
+    public void close() {
+        for (final var lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (final var lane : lanes) {
+                lane.awaitTermination(30, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.wfuertes.infra.events;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the event type carried as a message attribute to the record it decodes into, so a consumer can pick the
+ * decoder without looking inside the payload.
+ */
+public class EventTypeRegistry {
+    public static final String EVENT_TYPE_ATTRIBUTE = "eventType";
+
+    private final Map<String, Class<? extends Order>> types = new HashMap<>();
+
+    public static EventTypeRegistry orderEvents() {
+        return new EventTypeRegistry()
+                .register(OrderCreated.class)
+                .register(OrderDiscount.class)
+                .register(OrderOffer.class)
+                .register(OrderCompleted.class);
+    }
+
+    public static String typeOf(Object event) {
+        return event.getClass().getSimpleName();
+    }
+
+    public EventTypeRegistry register(Class<? extends Order> clazz) {
+        types.put(clazz.getSimpleName(), clazz);
+        return this;
+    }
+
+    public Class<? extends Order> classOf(String type) {
+        final var clazz = types.get(type);
+        if (clazz == null) {
+            throw new IllegalArgumentException("Unknown event type %s".formatted(type));
+        }
+        return clazz;
+    }
+}
@@ -2,4 +2,10 @@ package com.wfuertes.infra.events;
 
 public interface Order {
     String orderId();
+
+    /**
+     * Assigned once by the publisher and kept across redeliveries, so a duplicate can be recognized; null for
+     * events published before events carried one.
+     */
+    String eventId();
 }
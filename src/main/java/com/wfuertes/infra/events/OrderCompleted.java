@@ -1,4 +1,4 @@
 package com.wfuertes.infra.events;
 
-public record OrderCompleted(String orderId, Integer foodsTotal, Integer taxes) implements Order {
+public record OrderCompleted(String orderId, Integer foodsTotal, Integer taxes, String eventId) implements Order {
 }
@@ -1,4 +1,4 @@
 package com.wfuertes.infra.events;
 
-public record OrderCreated(String orderId, Long orderNumber, String type) implements Order {
+public record OrderCreated(String orderId, Long orderNumber, String type, String eventId) implements Order {
 }
@@ -1,4 +1,4 @@
 package com.wfuertes.infra.events;
 
-public record OrderDiscount(String orderId, Integer amount) implements Order {
+public record OrderDiscount(String orderId, Integer amount, String eventId) implements Order {
 }
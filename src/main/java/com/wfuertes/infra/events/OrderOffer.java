@@ -1,4 +1,4 @@
 package com.wfuertes.infra.events;
 
-public record OrderOffer(String orderId, Integer amount, String offerType) implements Order {
+public record OrderOffer(String orderId, Integer amount, String offerType, String eventId) implements Order {
 }
@@ -3,10 +3,17 @@ package com.wfuertes.infra.json;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class JsonParser {
 
     private final ObjectMapper mapper;
+    private final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
 
     public JsonParser() {
         this.mapper = new ObjectMapper();
@@ -16,7 +23,15 @@ public class JsonParser {
 
     public <T> String toJson(T value) {
         try {
-            return mapper.writeValueAsString(value);
+            return writer(value.getClass()).writeValueAsString(value);
+        } catch (JsonProcessingException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    public <T> byte[] toJsonBytes(T value) {
+        try {
+            return writer(value.getClass()).writeValueAsBytes(value);
         } catch (JsonProcessingException err) {
             throw new RuntimeException(err);
         }
@@ -24,9 +39,52 @@ public class JsonParser {
 
     public <T> T fromJson(String json, Class<T> clazz) {
         try {
-            return mapper.readValue(json, clazz);
+            return reader(clazz).readValue(json);
         } catch (JsonProcessingException err) {
             throw new RuntimeException(err);
         }
     }
+
+    public <T> T fromJson(byte[] json, Class<T> clazz) {
+        try {
+            return reader(clazz).readValue(json);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    /**
+     * Reads a value straight out of a character buffer, e.g. the text of a token still held by a streaming parser.
+     */
+    public <T> T fromJson(char[] json, int offset, int length, Class<T> clazz) {
+        try (final var parser = mapper.getFactory().createParser(json, offset, length)) {
+            return reader(clazz).readValue(parser);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    public com.fasterxml.jackson.core.JsonParser createParser(String json) {
+        try {
+            return mapper.getFactory().createParser(json);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    public com.fasterxml.jackson.core.JsonParser createParser(char[] json, int offset, int length) {
+        try {
+            return mapper.getFactory().createParser(json, offset, length);
+        } catch (IOException err) {
+            throw new RuntimeException(err);
+        }
+    }
+
+    public ObjectReader reader(Class<?> clazz) {
+        return readers.computeIfAbsent(clazz, mapper::readerFor);
+    }
+
+    public ObjectWriter writer(Class<?> clazz) {
+        return writers.computeIfAbsent(clazz, mapper::writerFor);
+    }
 }
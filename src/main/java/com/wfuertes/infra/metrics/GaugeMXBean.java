@@ -0,0 +1,5 @@
+package com.wfuertes.infra.metrics;
+
+public interface GaugeMXBean {
+    long getValue();
+}
@@ -0,0 +1,118 @@
+package com.wfuertes.infra.metrics;
+
+import com.wfuertes.infra.events.EventTypeRegistry;
+import com.wfuertes.infra.events.Order;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process wide registry of the pipeline stages and gauges; everything registered here is also published as an
+ * MXBean under the {@value #JMX_DOMAIN} domain and rendered by {@link #renderText()}.
+ */
+public class Metrics {
+    public static final String JMX_DOMAIN = "com.wfuertes.eventsourcing";
+
+    public static final String SQS_RECEIVE = "sqs.receive";
+    public static final String SQS_ENVELOPE_DECODE = "sqs.envelope.decode";
+    public static final String SQS_DECODE = "sqs.decode";
+    public static final String SQS_HANDLE = "sqs.handle";
+    public static final String SQS_DELETE = "sqs.delete";
+    public static final String DYNAMO_FIND_BY_ID = "dynamo.findById";
+    public static final String DYNAMO_SAVE = "dynamo.save";
+    public static final String DYNAMO_UPDATE = "dynamo.update";
+    public static final String DYNAMO_APPEND = "dynamo.append";
+    public static final String SQS_QUEUE_WAIT = "sqs.queueWait";
+    public static final String FRESHNESS_SENT_TO_APPLIED = "freshness.sentToApplied";
+    public static final String FRESHNESS_PUBLISHED_TO_APPLIED = "freshness.publishedToApplied";
+
+    private static final Metrics GLOBAL = new Metrics(true);
+
+    private final boolean jmx;
+    private final ConcurrentHashMap<String, Stage> stages = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    public Metrics(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public Stage stage(String name) {
+        final var stage = stages.get(name);
+        if (stage != null) {
+            return stage;
+        }
+        return stages.computeIfAbsent(name, created -> new Stage(created, this::register));
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        if (gauges.putIfAbsent(name, value) == null && jmx) {
+            final GaugeMXBean gauge = value::getAsLong;
+            register(gauge, GaugeMXBean.class, "type=Gauge,name=%s".formatted(ObjectName.quote(name)));
+        }
+    }
+
+    /**
+     * One line per stage and label, then one per gauge, e.g.
+     * {@code dynamo.append{label="OrderCreated"} count=12 errors=0 mean=4.1ms p50=3.9ms p99=8.2ms max=9.0ms}.
+     */
+    public String renderText() {
+        final var text = new StringBuilder();
+        for (final var stage : new TreeMap<>(stages).values()) {
+            for (final Map.Entry<String, Stage.Stats> entry : stage.snapshot().entrySet()) {
+                final var stats = entry.getValue();
+                text.append("%s{label=\"%s\"} count=%d errors=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p999=%.3fms max=%.3fms%n".formatted(
+                        stage.name(), entry.getKey(), stats.getCount(), stats.getErrors(), stats.getMeanMillis(),
+                        stats.getP50Millis(), stats.getP90Millis(), stats.getP99Millis(), stats.getP999Millis(),
+                        stats.getMaxMillis()));
+            }
+        }
+        for (final var gauge : new TreeMap<>(gauges).entrySet()) {
+            text.append("%s %d%n".formatted(gauge.getKey(), gauge.getValue().getAsLong()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The label of a write covering {@code events}: their type, or {@code mixed} when they differ.
+     */
+    public static String eventLabel(List<? extends Order> events) {
+        if (events.isEmpty()) {
+            return "none";
+        }
+        final var type = EventTypeRegistry.typeOf(events.get(0));
+        for (final var event : events) {
+            if (!type.equals(EventTypeRegistry.typeOf(event))) {
+                return "mixed";
+            }
+        }
+        return type;
+    }
+
+    private void register(Stage.Stats stats) {
+        if (jmx) {
+            register(stats, StageStatsMXBean.class, "type=Stage,name=%s,label=%s".formatted(
+                    ObjectName.quote(stats.stage), ObjectName.quote(stats.label)));
+        }
+    }
+
+    private static <T> void register(T bean, Class<T> type, String properties) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(bean, type, true),
+                    new ObjectName("%s:%s".formatted(JMX_DOMAIN, properties)));
+        } catch (JMException err) {
+            System.out.printf("Metrics: %s not registered in JMX: %s%n", properties, err.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.wfuertes.infra.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves {@link Metrics#renderText()} as plain text on {@code http://localhost:<port>/metrics}.
+ */
+public class MetricsEndpoint implements AutoCloseable {
+    private final HttpServer server;
+
+    public MetricsEndpoint(Metrics metrics, int port) {
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException err) {
+            throw new UncheckedIOException(err);
+        }
+        server.createContext("/metrics", exchange -> {
+            try (exchange) {
+                final var body = metrics.renderText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        System.out.printf("Metrics: serving http://localhost:%d/metrics%n", server.getAddress().getPort());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,171 @@
+package com.wfuertes.infra.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Latency and error counts of one pipeline stage, kept separately per label (the event type, or the queue when
+ * the stage runs before the event type is known).
+ */
+public class Stage {
+    private final String name;
+    private final Consumer<Stats> onCreate;
+    private final ConcurrentHashMap<String, Stats> byLabel = new ConcurrentHashMap<>();
+
+    Stage(String name, Consumer<Stats> onCreate) {
+        this.name = name;
+        this.onCreate = onCreate;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a latency measured elsewhere, e.g. from timestamps carried by a message.
+     */
+    public void record(String label, long nanos) {
+        stats(label).latency.record(nanos);
+    }
+
+    public void success(String label, long startNanos) {
+        final var elapsed = System.nanoTime() - startNanos;
+        stats(label).latency.record(elapsed);
+    }
+
+    public void failure(String label, long startNanos) {
+        final var elapsed = System.nanoTime() - startNanos;
+        final var stats = stats(label);
+        stats.latency.record(elapsed);
+        stats.errors.increment();
+    }
+
+    public <T> T time(String label, Supplier<T> operation) {
+        final var start = start();
+        try {
+            final var result = operation.get();
+            success(label, start);
+            return result;
+        } catch (RuntimeException err) {
+            failure(label, start);
+            throw err;
+        }
+    }
+
+    public void time(String label, Runnable operation) {
+        time(label, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    public <T> CompletableFuture<T> timeAsync(String label, Supplier<CompletableFuture<T>> operation) {
+        final var start = start();
+        final CompletableFuture<T> result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException err) {
+            failure(label, start);
+            throw err;
+        }
+        return result.whenComplete((ignored, err) -> {
+            if (err == null) {
+                success(label, start);
+            } else {
+                failure(label, start);
+            }
+        });
+    }
+
+    public long count(String label) {
+        final var stats = byLabel.get(label);
+        return stats == null ? 0L : stats.latency.count();
+    }
+
+    /**
+     * The latency at {@code percentile} of everything recorded under {@code label}, 0 before anything was.
+     */
+    public long percentileNanos(String label, double percentile) {
+        final var stats = byLabel.get(label);
+        return stats == null ? 0L : stats.latency.percentileNanos(percentile);
+    }
+
+    Map<String, Stats> snapshot() {
+        return new TreeMap<>(byLabel);
+    }
+
+    private Stats stats(String label) {
+        final var stats = byLabel.get(label);
+        if (stats != null) {
+            return stats;
+        }
+        return byLabel.computeIfAbsent(label, created -> {
+            final var fresh = new Stats(name, created);
+            onCreate.accept(fresh);
+            return fresh;
+        });
+    }
+
+    static final class Stats implements StageStatsMXBean {
+        private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+        final String stage;
+        final String label;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        Stats(String stage, String label) {
+            this.stage = stage;
+            this.label = label;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return latency.meanNanos() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return latency.percentileNanos(50) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP90Millis() {
+            return latency.percentileNanos(90) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return latency.percentileNanos(99) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP999Millis() {
+            return latency.percentileNanos(99.9) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return latency.maxNanos() / NANOS_PER_MILLI;
+        }
+    }
+}
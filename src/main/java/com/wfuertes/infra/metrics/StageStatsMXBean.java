@@ -0,0 +1,19 @@
+package com.wfuertes.infra.metrics;
+
+public interface StageStatsMXBean {
+    long getCount();
+
+    long getErrors();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+}
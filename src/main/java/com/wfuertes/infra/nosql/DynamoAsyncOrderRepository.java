@@ -0,0 +1,43 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.AsyncOrderRepository;
+import com.wfuertes.domain.Order;
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public class DynamoAsyncOrderRepository implements AsyncOrderRepository {
+
+    private static final String LABEL = "ORDER";
+
+    private final DynamoDbAsyncClient dynamo;
+    private final Stage finds = Metrics.global().stage(Metrics.DYNAMO_FIND_BY_ID);
+    private final ReadPolicy readPolicy;
+    private final HedgedReads hedgedReads;
+
+    public DynamoAsyncOrderRepository(DynamoDbAsyncClient dynamo) {
+        this(dynamo, ReadPolicy.defaults());
+    }
+
+    public DynamoAsyncOrderRepository(DynamoDbAsyncClient dynamo, ReadPolicy readPolicy) {
+        this.dynamo = dynamo;
+        this.readPolicy = readPolicy;
+        this.hedgedReads = new HedgedReads(finds, LABEL, readPolicy.hedged());
+    }
+
+    @Override
+    public CompletableFuture<Optional<Order>> findById(String orderId) {
+        final var request = OrderItems.findByIdRequest(orderId, readPolicy.attemptTimeout());
+        return hedgedReads
+                .read(() -> finds.timeAsync(LABEL, () -> dynamo.getItem(request)))
+                .thenApply(response -> {
+                    if (!response.hasItem()) {
+                        return Optional.empty();
+                    }
+                    return Optional.of(OrderItems.deserialize(response.item()));
+                });
+    }
+}
@@ -0,0 +1,93 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.OrderVersionConflict;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+public final class DynamoErrors {
+
+    private DynamoErrors() {
+    }
+
+    static Throwable unwrap(Throwable err) {
+        return err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+    }
+
+    /**
+     * Translates a failed conditional write of an order into {@link OrderVersionConflict}, keeping any other failure.
+     */
+    static CompletionException translate(String orderId, Throwable err) {
+        final var cause = unwrap(err);
+        if (cause instanceof ConditionalCheckFailedException) {
+            return new CompletionException(new OrderVersionConflict(orderId, cause));
+        }
+        if (cause instanceof TransactionCanceledException cancelled && isConflict(cancelled)) {
+            return new CompletionException(new OrderVersionConflict(orderId, cause));
+        }
+        return err instanceof CompletionException completion ? completion : new CompletionException(cause);
+    }
+
+    /**
+     * Whether the table, or the account, refused the request for lack of capacity, including a transaction
+     * cancelled because one of its items was throttled.
+     */
+    public static boolean isThrottling(Throwable err) {
+        final var cause = unwrap(err);
+        if (cause instanceof ProvisionedThroughputExceededException || cause instanceof RequestLimitExceededException) {
+            return true;
+        }
+        if (cause instanceof TransactionCanceledException cancelled && cancelled.hasCancellationReasons()) {
+            return cancelled.cancellationReasons()
+                    .stream()
+                    .map(CancellationReason::code)
+                    .anyMatch(code -> "ThrottlingError".equals(code) || "ProvisionedThroughputExceeded".equals(code));
+        }
+        return cause instanceof SdkServiceException service && service.isThrottlingException();
+    }
+
+    /**
+     * Whether {@code err} is a transaction cancelled because another transaction was writing one of its items.
+     */
+    public static boolean isTransactionConflict(Throwable err) {
+        return unwrap(err) instanceof TransactionCanceledException cancelled
+                && cancelled.hasCancellationReasons()
+                && cancelled.cancellationReasons()
+                .stream()
+                .map(CancellationReason::code)
+                .anyMatch("TransactionConflict"::equals);
+    }
+
+    /**
+     * The positions of the items whose condition failed, when {@code err} is a cancelled transaction.
+     */
+    static Set<Integer> failedConditions(Throwable err) {
+        final var failed = new HashSet<Integer>();
+        if (unwrap(err) instanceof TransactionCanceledException cancelled && cancelled.hasCancellationReasons()) {
+            final var reasons = cancelled.cancellationReasons();
+            for (int i = 0; i < reasons.size(); i++) {
+                if ("ConditionalCheckFailed".equals(reasons.get(i).code())) {
+                    failed.add(i);
+                }
+            }
+        }
+        return failed;
+    }
+
+    private static boolean isConflict(TransactionCanceledException err) {
+        if (!err.hasCancellationReasons()) {
+            return false;
+        }
+        return err.cancellationReasons()
+                .stream()
+                .map(CancellationReason::code)
+                .anyMatch(code -> "ConditionalCheckFailed".equals(code) || "TransactionConflict".equals(code));
+    }
+}
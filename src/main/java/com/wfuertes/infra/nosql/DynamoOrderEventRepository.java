@@ -1,94 +1,83 @@
 package com.wfuertes.infra.nosql;
 
 import com.wfuertes.domain.OrderEventRepository;
+import com.wfuertes.domain.RecordedEvent;
 import com.wfuertes.infra.events.OrderCompleted;
 import com.wfuertes.infra.events.OrderCreated;
 import com.wfuertes.infra.events.OrderDiscount;
 import com.wfuertes.infra.events.OrderOffer;
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
 
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.time.Instant;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class DynamoOrderEventRepository implements OrderEventRepository {
-    private static final String ORDERS_APP_TABLE = "orders_app";
-
     private final DynamoDbClient dynamo;
+    private final OrderEventItems eventItems;
+    private final Stage appends = Metrics.global().stage(Metrics.DYNAMO_APPEND);
 
     public DynamoOrderEventRepository(DynamoDbClient dynamo) {
+        this(dynamo, MonotonicUlidGenerator.shared());
+    }
+
+    public DynamoOrderEventRepository(DynamoDbClient dynamo, EventIdGenerator eventIds) {
         this.dynamo = dynamo;
+        this.eventItems = new OrderEventItems(eventIds);
     }
 
     @Override
     public void save(OrderCreated orderCreated) {
-        final var sk = "ORDER_EVENT#%s".formatted(LocalDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        final var eventContent = Map.of(
-                "orderNumber", AttributeValue.fromN(String.valueOf(orderCreated.orderNumber())),
-                "type", AttributeValue.fromS(orderCreated.type())
-        );
-        dynamo.putItem(PutItemRequest
-                .builder()
-                .tableName(ORDERS_APP_TABLE)
-                .item(Map.ofEntries(
-                        Map.entry("pk", AttributeValue.fromS(orderCreated.orderId())),
-                        Map.entry("sk", AttributeValue.fromS(sk)),
-                        Map.entry("eventType", AttributeValue.fromS("OrderCreated")),
-                        Map.entry("eventContent", AttributeValue.fromM(eventContent))))
-                .build());
+        put(eventItems.toItem(orderCreated));
     }
 
     @Override
     public void save(OrderCompleted orderCompleted) {
-        final var sk = "ORDER_EVENT#%s".formatted(LocalDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        final var eventContent = Map.of(
-                "foodsTotal", AttributeValue.fromN(String.valueOf(orderCompleted.foodsTotal())),
-                "taxes", AttributeValue.fromN(String.valueOf(orderCompleted.foodsTotal()))
-        );
-        dynamo.putItem(PutItemRequest
-                .builder()
-                .tableName(ORDERS_APP_TABLE)
-                .item(Map.ofEntries(
-                        Map.entry("pk", AttributeValue.fromS(orderCompleted.orderId())),
-                        Map.entry("sk", AttributeValue.fromS(sk)),
-                        Map.entry("eventType", AttributeValue.fromS("OrderCompleted")),
-                        Map.entry("eventContent", AttributeValue.fromM(eventContent))))
-                .build());
+        put(eventItems.toItem(orderCompleted));
     }
 
     @Override
     public void save(OrderOffer orderOffer) {
-        final var sk = "ORDER_EVENT#%s".formatted(LocalDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        final var eventContent = Map.of(
-                "amount", AttributeValue.fromN(String.valueOf(orderOffer.amount())),
-                "offerType", AttributeValue.fromS(orderOffer.offerType())
-        );
-        dynamo.putItem(PutItemRequest
-                .builder()
-                .tableName(ORDERS_APP_TABLE)
-                .item(Map.ofEntries(
-                        Map.entry("pk", AttributeValue.fromS(orderOffer.orderId())),
-                        Map.entry("sk", AttributeValue.fromS(sk)),
-                        Map.entry("eventType", AttributeValue.fromS("OrderOffer")),
-                        Map.entry("eventContent", AttributeValue.fromM(eventContent))))
-                .build());
+        put(eventItems.toItem(orderOffer));
     }
 
     @Override
     public void save(OrderDiscount orderDiscount) {
-        final var sk = "ORDER_EVENT#%s".formatted(LocalDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        final var eventContent = Map.of("amount", AttributeValue.fromN(String.valueOf(orderDiscount.amount())));
-        dynamo.putItem(PutItemRequest
-                .builder()
-                .tableName(ORDERS_APP_TABLE)
-                .item(Map.ofEntries(
-                        Map.entry("pk", AttributeValue.fromS(orderDiscount.orderId())),
-                        Map.entry("sk", AttributeValue.fromS(sk)),
-                        Map.entry("eventType", AttributeValue.fromS("OrderDiscount")),
-                        Map.entry("eventContent", AttributeValue.fromM(eventContent))))
-                .build());
+        put(eventItems.toItem(orderDiscount));
+    }
+
+    @Override
+    public Stream<RecordedEvent> loadEvents(String orderId) {
+        return dynamo
+                .queryPaginator(OrderEventItems.loadRequest(orderId))
+                .items()
+                .stream()
+                .map(eventItems::fromItem);
+    }
+
+    @Override
+    public Stream<RecordedEvent> loadEventsAfter(String orderId, String sk) {
+        return dynamo
+                .queryPaginator(OrderEventItems.loadAfterRequest(orderId, sk))
+                .items()
+                .stream()
+                .filter(item -> !sk.equals(item.get("sk").s()))
+                .map(eventItems::fromItem);
+    }
+
+    @Override
+    public Stream<RecordedEvent> loadEventsSince(String orderId, Instant since) {
+        return eventItems
+                .loadSinceRequests(orderId, since)
+                .stream()
+                .flatMap(request -> dynamo.queryPaginator(request).items().stream())
+                .map(eventItems::fromItem);
+    }
+
+    private void put(Map<String, AttributeValue> item) {
+        appends.time(item.get("eventType").s(), () -> dynamo.putItem(OrderEventItems.putRequest(item)));
     }
 }
@@ -0,0 +1,111 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.DuplicateEvents;
+import com.wfuertes.domain.OrderJournal;
+import com.wfuertes.domain.OrderUpdate;
+import com.wfuertes.infra.concurrent.AdaptiveLimiter;
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class DynamoOrderJournal implements OrderJournal {
+    private static final int MAX_TRANSACT_ITEMS = 100;
+
+    private final DynamoDbAsyncClient dynamo;
+    private final OrderEventItems eventItems;
+    private final AdaptiveLimiter limiter;
+    private final Stage appends = Metrics.global().stage(Metrics.DYNAMO_APPEND);
+
+    public DynamoOrderJournal(DynamoDbAsyncClient dynamo) {
+        this(dynamo, MonotonicUlidGenerator.shared());
+    }
+
+    public DynamoOrderJournal(DynamoDbAsyncClient dynamo, EventIdGenerator eventIds) {
+        this(dynamo, eventIds, AdaptiveLimiter.unlimited());
+    }
+
+    /**
+     * Keeps the transactions in flight within {@code limiter}, which backs off when the table throttles.
+     */
+    public DynamoOrderJournal(DynamoDbAsyncClient dynamo, AdaptiveLimiter limiter) {
+        this(dynamo, MonotonicUlidGenerator.shared(), limiter);
+    }
+
+    public DynamoOrderJournal(DynamoDbAsyncClient dynamo, EventIdGenerator eventIds, AdaptiveLimiter limiter) {
+        this.dynamo = dynamo;
+        this.eventItems = new OrderEventItems(eventIds);
+        this.limiter = limiter;
+    }
+
+    @Override
+    public CompletableFuture<Void> append(OrderUpdate update, List<? extends Order> events) {
+        // Besides the order item, every event with an id takes two items: the event and its id marker
+        final var itemCount = 1 + events.size() + (int) events.stream().filter(event -> event.eventId() != null).count();
+        if (itemCount > MAX_TRANSACT_ITEMS) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(
+                    "A transaction holds at most %d items, %d events need %d".formatted(MAX_TRANSACT_ITEMS, events.size(), itemCount)));
+        }
+
+        final var items = new ArrayList<TransactWriteItem>(itemCount);
+        final var eventIdAt = new HashMap<Integer, String>();
+        items.add(TransactWriteItem
+                .builder()
+                .update(OrderUpsert.of(update, Math.max(1, events.size())).toTransactUpdate(OrderItems.ORDERS_APP_TABLE))
+                .build());
+        for (final var event : events) {
+            items.add(TransactWriteItem
+                    .builder()
+                    .put(Put
+                            .builder()
+                            .tableName(OrderItems.ORDERS_APP_TABLE)
+                            .item(eventItems.toItem(event))
+                            .conditionExpression("attribute_not_exists(sk)")
+                            .build())
+                    .build());
+            if (event.eventId() != null) {
+                eventIdAt.put(items.size(), event.eventId());
+                items.add(TransactWriteItem
+                        .builder()
+                        .put(Put
+                                .builder()
+                                .tableName(OrderItems.ORDERS_APP_TABLE)
+                                .item(OrderEventItems.eventIdItem(event))
+                                .conditionExpression("attribute_not_exists(sk)")
+                                .build())
+                        .build());
+            }
+        }
+
+        return limiter
+                .run(DynamoErrors::isThrottling, () -> appends.timeAsync(Metrics.eventLabel(events), () -> dynamo.transactWriteItems(TransactWriteItemsRequest
+                        .builder()
+                        .transactItems(items)
+                        .build())))
+                .handle((response, err) -> {
+                    if (err != null) {
+                        final var duplicates = new HashSet<String>();
+                        for (final var failed : DynamoErrors.failedConditions(err)) {
+                            if (eventIdAt.containsKey(failed)) {
+                                duplicates.add(eventIdAt.get(failed));
+                            }
+                        }
+                        if (!duplicates.isEmpty()) {
+                            throw new CompletionException(new DuplicateEvents(update.id(), duplicates, DynamoErrors.unwrap(err)));
+                        }
+                        throw DynamoErrors.translate(update.id(), err);
+                    }
+                    return null;
+                });
+    }
+}
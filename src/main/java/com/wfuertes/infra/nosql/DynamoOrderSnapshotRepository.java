@@ -0,0 +1,61 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.OrderSnapshot;
+import com.wfuertes.domain.OrderSnapshotRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores folded snapshots as the {@code SNAPSHOT} item of the order, next to (and never matched as) the
+ * {@code ORDER} projection and the {@code ORDER_EVENT#...} stream.
+ */
+public class DynamoOrderSnapshotRepository implements OrderSnapshotRepository {
+    private static final String SNAPSHOT_SK = "SNAPSHOT";
+
+    private final DynamoDbClient dynamo;
+
+    public DynamoOrderSnapshotRepository(DynamoDbClient dynamo) {
+        this.dynamo = dynamo;
+    }
+
+    @Override
+    public void save(OrderSnapshot snapshot) {
+        final var item = OrderItems.serializeToSave(snapshot.order());
+        item.put("sk", AttributeValue.fromS(SNAPSHOT_SK));
+        item.put("position", AttributeValue.fromS(snapshot.position()));
+        try {
+            dynamo.putItem(PutItemRequest
+                    .builder()
+                    .tableName(OrderItems.ORDERS_APP_TABLE)
+                    .item(item)
+                    .conditionExpression("attribute_not_exists(pk) OR #version < :version")
+                    .expressionAttributeNames(Map.of("#version", "version"))
+                    .expressionAttributeValues(Map.of(":version", item.get("version")))
+                    .build());
+        } catch (ConditionalCheckFailedException err) {
+            // A snapshot at the same or a later position is already stored
+        }
+    }
+
+    @Override
+    public Optional<OrderSnapshot> findById(String orderId) {
+        final var response = dynamo.getItem(GetItemRequest
+                .builder()
+                .tableName(OrderItems.ORDERS_APP_TABLE)
+                .key(Map.of(
+                        "pk", AttributeValue.fromS(orderId),
+                        "sk", AttributeValue.fromS(SNAPSHOT_SK)))
+                .build());
+        if (!response.hasItem()) {
+            return Optional.empty();
+        }
+        final var item = response.item();
+        return Optional.of(new OrderSnapshot(OrderItems.deserialize(item), item.get("position").s()));
+    }
+}
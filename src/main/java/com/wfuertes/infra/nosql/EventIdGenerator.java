@@ -0,0 +1,19 @@
+package com.wfuertes.infra.nosql;
+
+import java.time.Instant;
+
+/**
+ * Produces the ids that position events in an order's stream. Ids must be unique and sort, as strings,
+ * in the order they were generated.
+ */
+public interface EventIdGenerator {
+
+    String next();
+
+    /**
+     * The smallest id that could be generated at {@code instant}, to start range reads from.
+     */
+    String lowerBound(Instant instant);
+
+    Instant timestampOf(String id);
+}
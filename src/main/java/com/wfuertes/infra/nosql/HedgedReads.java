@@ -0,0 +1,124 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.infra.metrics.Metrics;
+import com.wfuertes.infra.metrics.Stage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends a second, identical read when the first one has not answered within the p95 of the reads timed by
+ * {@code stage}, and takes whichever succeeds first. Reads are idempotent, so the cost is the extra request on
+ * roughly one read in twenty, in exchange for cutting off the tail.
+ * <p>
+ * The p95 is taken again every {@value #REFRESH_EVERY} reads rather than on each one, and at most
+ * {@value #MAX_HEDGES} hedges are in flight at a time so a slow table is not sent twice the load.
+ */
+final class HedgedReads {
+    // Below this the p95 says little, so nothing is hedged yet
+    private static final long MIN_SAMPLES = 100;
+    private static final int REFRESH_EVERY = 64;
+    private static final int MAX_HEDGES = 16;
+
+    private static final LongAdder READS = new LongAdder();
+    private static final LongAdder HEDGES = new LongAdder();
+    private static final LongAdder HEDGE_WINS = new LongAdder();
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "dynamo-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Semaphore HEDGE_PERMITS = new Semaphore(MAX_HEDGES);
+
+    static {
+        Metrics.global().gauge("dynamo.hedgedReads.reads", READS::sum);
+        Metrics.global().gauge("dynamo.hedgedReads.hedges", HEDGES::sum);
+        Metrics.global().gauge("dynamo.hedgedReads.hedgeWins", HEDGE_WINS::sum);
+        Metrics.global().gauge("dynamo.hedgedReads.hedgeRatePermille", () -> {
+            final var reads = READS.sum();
+            return reads == 0 ? 0L : HEDGES.sum() * 1000 / reads;
+        });
+    }
+
+    private final Stage stage;
+    private final String label;
+    private final boolean enabled;
+    private final AtomicLong reads = new AtomicLong();
+    private volatile long delayNanos;
+
+    HedgedReads(Stage stage, String label, boolean enabled) {
+        this.stage = stage;
+        this.label = label;
+        this.enabled = enabled;
+    }
+
+    <T> CompletableFuture<T> read(Supplier<CompletableFuture<T>> attempt) {
+        if (!enabled) {
+            return attempt.get();
+        }
+        return hedged(start(attempt), attempt);
+    }
+
+    private <T> CompletableFuture<T> hedged(CompletableFuture<T> first, Supplier<CompletableFuture<T>> attempt) {
+        READS.increment();
+        final var delay = hedgeDelayNanos();
+        if (delay == 0L || first.isDone()) {
+            return first;
+        }
+
+        final var result = new CompletableFuture<T>();
+        // Attempts that may still answer; the read only fails once none is left
+        final var outstanding = new AtomicInteger(1);
+        first.whenComplete(settle(result, outstanding, false));
+        final var hedge = SCHEDULER.schedule(() -> {
+            if (result.isDone() || !HEDGE_PERMITS.tryAcquire()) {
+                return;
+            }
+            if (outstanding.getAndIncrement() == 0) {
+                HEDGE_PERMITS.release();
+                return;
+            }
+            HEDGES.increment();
+            final var second = start(attempt);
+            second.whenComplete((ignored, err) -> HEDGE_PERMITS.release());
+            second.whenComplete(settle(result, outstanding, true));
+        }, delay, TimeUnit.NANOSECONDS);
+        result.whenComplete((ignored, err) -> hedge.cancel(false));
+        return result;
+    }
+
+    private long hedgeDelayNanos() {
+        if (reads.getAndIncrement() % REFRESH_EVERY == 0) {
+            delayNanos = stage.count(label) < MIN_SAMPLES ? 0L : stage.percentileNanos(label, 95);
+        }
+        return delayNanos;
+    }
+
+    private static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> attempt) {
+        try {
+            return attempt.get();
+        } catch (RuntimeException err) {
+            return CompletableFuture.failedFuture(err);
+        }
+    }
+
+    private static <T> BiConsumer<T, Throwable> settle(CompletableFuture<T> result, AtomicInteger outstanding, boolean hedge) {
+        return (value, err) -> {
+            if (err == null) {
+                if (result.complete(value) && hedge) {
+                    HEDGE_WINS.increment();
+                }
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(err);
+            }
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.wfuertes.infra.nosql;
+
+import java.security.SecureRandom;
+import java.time.Instant;
+
+/**
+ * Generates ULIDs: a 48 bit millisecond timestamp followed by 80 random bits, in Crockford base32.
+ * <p>
+ * Ids generated in the same millisecond (or while the clock steps back) reuse the last timestamp and increment
+ * the random part, so every id is strictly greater than the previous one from the same generator; writers of one
+ * process share {@link #shared()} so that holds across them.
+ */
+public class MonotonicUlidGenerator implements EventIdGenerator {
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int TIMESTAMP_CHARS = 10;
+    private static final int ID_CHARS = 26;
+    private static final MonotonicUlidGenerator SHARED = new MonotonicUlidGenerator();
+
+    private final SecureRandom random = new SecureRandom();
+    private long lastMillis = -1L;
+    private long randomHigh;
+    private long randomLow;
+
+    public static MonotonicUlidGenerator shared() {
+        return SHARED;
+    }
+
+    @Override
+    public String next() {
+        final long millis;
+        final long high;
+        final long low;
+        synchronized (this) {
+            final var now = System.currentTimeMillis();
+            if (now > lastMillis) {
+                lastMillis = now;
+                randomHigh = random.nextInt() & 0xFFFFL;
+                randomLow = random.nextLong();
+            } else {
+                randomLow++;
+                if (randomLow == 0L) {
+                    randomHigh = (randomHigh + 1) & 0xFFFFL;
+                    if (randomHigh == 0L) {
+                        // 80 bits exhausted within one millisecond, move on to the next one
+                        lastMillis++;
+                    }
+                }
+            }
+            millis = lastMillis;
+            high = randomHigh;
+            low = randomLow;
+        }
+        return encode(millis, high, low);
+    }
+
+    @Override
+    public String lowerBound(Instant instant) {
+        return encode(instant.toEpochMilli(), 0L, 0L);
+    }
+
+    @Override
+    public Instant timestampOf(String id) {
+        long millis = 0L;
+        for (int i = 0; i < TIMESTAMP_CHARS; i++) {
+            millis = (millis << 5) | decode(id.charAt(i));
+        }
+        return Instant.ofEpochMilli(millis);
+    }
+
+    private static String encode(long millis, long high, long low) {
+        final var chars = new char[ID_CHARS];
+        for (int i = TIMESTAMP_CHARS - 1; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (millis & 31)];
+            millis >>>= 5;
+        }
+        for (int i = ID_CHARS - 1; i >= TIMESTAMP_CHARS; i--) {
+            chars[i] = ALPHABET[(int) (low & 31)];
+            low = (low >>> 5) | ((high & 31) << 59);
+            high >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    private static int decode(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Invalid ULID character '%s'".formatted(c));
+    }
+}
@@ -0,0 +1,179 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.RecordedEvent;
+import com.wfuertes.infra.codec.BinaryEventCodec;
+import com.wfuertes.infra.events.EventTypeRegistry;
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+final class OrderEventItems {
+    private static final String SK_PREFIX = "ORDER_EVENT#";
+    // Generated ids follow a '~', which sorts after the digits the legacy date-time keys start with, so the events
+    // of a stream stay in order across the switch to generated ids
+    private static final String ID_SK_PREFIX = SK_PREFIX + "~";
+    // '$' is the character right after '#', so every event sort key is below it
+    private static final String SK_END = "ORDER_EVENT$";
+    // Outside of the ORDER prefix, so neither the order nor its event reads match it
+    private static final String EVENT_ID_PREFIX = "EVENT_ID#";
+
+    private final EventIdGenerator eventIds;
+    private final BinaryEventCodec codec = new BinaryEventCodec();
+
+    OrderEventItems(EventIdGenerator eventIds) {
+        this.eventIds = eventIds;
+    }
+
+    static PutItemRequest putRequest(Map<String, AttributeValue> item) {
+        return PutItemRequest
+                .builder()
+                .tableName(OrderItems.ORDERS_APP_TABLE)
+                .item(item)
+                .build();
+    }
+
+    Map<String, AttributeValue> toItem(Order event) {
+        return item(event.orderId(), EventTypeRegistry.typeOf(event), codec.encode(event));
+    }
+
+    /**
+     * Marks the event as applied; put with {@code attribute_not_exists(sk)} next to the event so a redelivered
+     * event fails its write instead of being appended twice.
+     */
+    static Map<String, AttributeValue> eventIdItem(Order event) {
+        return Map.of(
+                "pk", AttributeValue.fromS(event.orderId()),
+                "sk", AttributeValue.fromS(EVENT_ID_PREFIX + event.eventId()),
+                "eventType", AttributeValue.fromS(EventTypeRegistry.typeOf(event)));
+    }
+
+    RecordedEvent fromItem(Map<String, AttributeValue> item) {
+        final var sk = item.get("sk").s();
+        final var eventContent = item.get("eventContent");
+        final var event = eventContent.b() != null
+                ? codec.decode(eventContent.b().asByteArrayUnsafe())
+                : fromLegacyContent(item.get("pk").s(), item.get("eventType").s(), eventContent.m());
+        return new RecordedEvent(sk, recordedAt(sk), event);
+    }
+
+    /**
+     * Events written before generated ids were keyed by their UTC ISO local date-time.
+     */
+    private LocalDateTime recordedAt(String sk) {
+        if (sk.startsWith(ID_SK_PREFIX)) {
+            return LocalDateTime.ofInstant(eventIds.timestampOf(sk.substring(ID_SK_PREFIX.length())), ZoneOffset.UTC);
+        }
+        return LocalDateTime.parse(sk.substring(SK_PREFIX.length()));
+    }
+
+    /**
+     * Events written before the binary codec kept their content as a map of attributes.
+     */
+    private static Order fromLegacyContent(String orderId, String eventType, Map<String, AttributeValue> eventContent) {
+        return switch (eventType) {
+            case "OrderCreated" -> new OrderCreated(
+                    orderId,
+                    Long.parseLong(eventContent.get("orderNumber").n()),
+                    eventContent.get("type").s(),
+                    null);
+            case "OrderCompleted" -> new OrderCompleted(
+                    orderId,
+                    Integer.parseInt(eventContent.get("foodsTotal").n()),
+                    Integer.parseInt(eventContent.get("taxes").n()),
+                    null);
+            case "OrderOffer" -> new OrderOffer(
+                    orderId,
+                    Integer.parseInt(eventContent.get("amount").n()),
+                    eventContent.get("offerType").s(),
+                    null);
+            case "OrderDiscount" -> new OrderDiscount(
+                    orderId,
+                    Integer.parseInt(eventContent.get("amount").n()),
+                    null);
+            default -> throw new IllegalArgumentException("Unknown event type %s".formatted(eventType));
+        };
+    }
+
+    static QueryRequest loadRequest(String orderId) {
+        return QueryRequest
+                .builder()
+                .tableName(OrderItems.ORDERS_APP_TABLE)
+                .keyConditionExpression("#pk = :pk AND begins_with(#sk, :prefix)")
+                .expressionAttributeNames(Map.of("#pk", "pk", "#sk", "sk"))
+                .expressionAttributeValues(Map.of(
+                        ":pk", AttributeValue.fromS(orderId),
+                        ":prefix", AttributeValue.fromS(SK_PREFIX)))
+                .build();
+    }
+
+    /**
+     * Event sort keys all sort between {@code sk} and the prefix upper bound; {@code sk} itself is matched too
+     * because BETWEEN is inclusive, so callers skip it.
+     */
+    static QueryRequest loadAfterRequest(String orderId, String sk) {
+        return rangeRequest(orderId, afterRange(sk));
+    }
+
+    static SkRange afterRange(String sk) {
+        return new SkRange(sk, SK_END);
+    }
+
+    /**
+     * One query per kind of key, legacy date-time keys first: a date-time and an id lower bound can't be
+     * compared, so a single range from either would miss events or match earlier ones.
+     */
+    List<QueryRequest> loadSinceRequests(String orderId, Instant since) {
+        return sinceRanges(since)
+                .stream()
+                .map(range -> rangeRequest(orderId, range))
+                .toList();
+    }
+
+    List<SkRange> sinceRanges(Instant since) {
+        final var legacyFrom = SK_PREFIX + LocalDateTime.ofInstant(since, ZoneOffset.UTC).format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        return List.of(
+                new SkRange(legacyFrom, ID_SK_PREFIX),
+                new SkRange(ID_SK_PREFIX + eventIds.lowerBound(since), SK_END));
+    }
+
+    private static QueryRequest rangeRequest(String orderId, SkRange range) {
+        return QueryRequest
+                .builder()
+                .tableName(OrderItems.ORDERS_APP_TABLE)
+                .keyConditionExpression("#pk = :pk AND #sk BETWEEN :from AND :to")
+                .expressionAttributeNames(Map.of("#pk", "pk", "#sk", "sk"))
+                .expressionAttributeValues(Map.of(
+                        ":pk", AttributeValue.fromS(orderId),
+                        ":from", AttributeValue.fromS(range.from()),
+                        ":to", AttributeValue.fromS(range.to())))
+                .build();
+    }
+
+    /**
+     * The sort keys between {@code from} and {@code to}, both included.
+     */
+    record SkRange(String from, String to) {
+    }
+
+    private Map<String, AttributeValue> item(String orderId, String eventType, byte[] eventContent) {
+        final var sk = ID_SK_PREFIX + eventIds.next();
+        return Map.ofEntries(
+                Map.entry("pk", AttributeValue.fromS(orderId)),
+                Map.entry("sk", AttributeValue.fromS(sk)),
+                Map.entry("eventType", AttributeValue.fromS(eventType)),
+                Map.entry("eventContent", AttributeValue.fromB(SdkBytes.fromByteArrayUnsafe(eventContent))));
+    }
+}
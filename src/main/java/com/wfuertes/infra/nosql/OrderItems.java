@@ -0,0 +1,159 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.Order;
+import software.amazon.awssdk.awscore.AwsRequestOverrideConfiguration;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Requests and (de)serialization of the {@code ORDER} snapshot item, shared by the blocking and async repositories.
+ */
+final class OrderItems {
+    static final String ORDERS_APP_TABLE = "orders_app";
+    // Everything deserialize reads; through names because number and type are reserved words
+    private static final List<String> SNAPSHOT_ATTRIBUTES = List.of(
+            "pk", "number", "type", "foodsTotal", "taxes", "discountAmount", "offerAmount", "offerType", "version",
+            "createdAt", "updatedAt", "discountTotal", "offerTpe");
+    private static final Map<String, String> PROJECTION_NAMES = SNAPSHOT_ATTRIBUTES
+            .stream()
+            .collect(Collectors.toUnmodifiableMap(attribute -> "#" + attribute, attribute -> attribute));
+    private static final String PROJECTION = SNAPSHOT_ATTRIBUTES
+            .stream()
+            .map(attribute -> "#" + attribute)
+            .collect(Collectors.joining(", "));
+
+    private OrderItems() {
+    }
+
+    static PutItemRequest saveRequest(Order order) {
+        return PutItemRequest
+                .builder()
+                .tableName(ORDERS_APP_TABLE)
+                .item(serializeToSave(order))
+                .conditionExpression("attribute_not_exists(pk)")
+                .build();
+    }
+
+    static UpdateItemRequest updateRequest(Order order, long currentVersion) {
+        final var update = OrderUpdateTemplates.update(order);
+        final var exprAttrValues = update.expressionAttributeValues();
+        exprAttrValues.put(":currentVersion", AttributeValue.fromN(String.valueOf(currentVersion)));
+
+        return UpdateItemRequest
+                .builder()
+                .tableName(ORDERS_APP_TABLE)
+                .key(key(order.id()))
+                .updateExpression(update.template().updateExpression())
+                .conditionExpression("#version = :currentVersion")
+                .expressionAttributeNames(update.template().expressionAttributeNames())
+                .expressionAttributeValues(exprAttrValues)
+                .build();
+    }
+
+    /**
+     * Only the {@code ORDER} item, by its key; a query on the ORDER prefix would also page through the events.
+     * The read is strongly consistent as the version it returns guards the next write.
+     */
+    static GetItemRequest findByIdRequest(String orderId, Duration attemptTimeout) {
+        return GetItemRequest
+                .builder()
+                .tableName(ORDERS_APP_TABLE)
+                .key(key(orderId))
+                .projectionExpression(PROJECTION)
+                .expressionAttributeNames(PROJECTION_NAMES)
+                .consistentRead(true)
+                .overrideConfiguration(AwsRequestOverrideConfiguration
+                        .builder()
+                        .apiCallAttemptTimeout(attemptTimeout)
+                        .build())
+                .build();
+    }
+
+    static Map<String, AttributeValue> key(String orderId) {
+        return Map.of(
+                "pk", AttributeValue.fromS(orderId),
+                "sk", AttributeValue.fromS("ORDER"));
+    }
+
+    /**
+     * Also reads snapshots written before the attribute names were aligned, with the number as a string, the
+     * offer type as {@code offerTpe} and the discount as {@code discountTotal}; the current names win.
+     */
+    static Order deserialize(Map<String, AttributeValue> item) {
+        final var id = item.get("pk").s();
+        final var number = Optional.ofNullable(item.get("number"))
+                .map(value -> value.n() != null ? value.n() : value.s())
+                .map(Long::parseLong)
+                .orElse(null);
+        final var type = Optional.ofNullable(item.get("type"))
+                .map(AttributeValue::s)
+                .orElse(null);
+        final var foodsTotal = Optional.ofNullable(item.get("foodsTotal"))
+                .map(AttributeValue::n)
+                .map(Integer::parseInt)
+                .orElse(null);
+        final var taxes = Optional.ofNullable(item.get("taxes"))
+                .map(AttributeValue::n)
+                .map(Integer::parseInt)
+                .orElse(null);
+        final var discountTotal = Optional.ofNullable(item.get("discountAmount"))
+                .or(() -> Optional.ofNullable(item.get("discountTotal")))
+                .map(AttributeValue::n)
+                .map(Integer::parseInt)
+                .orElse(null);
+        final var offerAmount = Optional.ofNullable(item.get("offerAmount"))
+                .map(AttributeValue::n)
+                .map(Integer::parseInt)
+                .orElse(null);
+        final var offerType = Optional.ofNullable(item.get("offerType"))
+                .or(() -> Optional.ofNullable(item.get("offerTpe")))
+                .map(AttributeValue::s)
+                .orElse(null);
+        final var version = Long.parseLong(item.get("version").n());
+
+        final var createdAt = LocalDateTime.parse(item.get("createdAt").s());
+        final var updateAt = LocalDateTime.parse(item.get("updatedAt").s());
+
+        return Order.builder()
+                .id(id)
+                .number(number)
+                .type(type)
+                .foodsTotal(foodsTotal)
+                .discountAmount(discountTotal)
+                .taxes(taxes)
+                .offerAmount(offerAmount)
+                .offerType(offerType)
+                .version(version)
+                .createdAt(createdAt)
+                .updatedAt(updateAt)
+                .build();
+    }
+
+    static Map<String, AttributeValue> serializeToSave(Order order) {
+        final Map<String, AttributeValue> attributes = new HashMap<>();
+        attributes.put("pk", AttributeValue.fromS(order.id()));
+        attributes.put("sk", AttributeValue.fromS("ORDER"));
+        order.number().map(String::valueOf).map(AttributeValue::fromN).ifPresent(value -> attributes.put("number", value));
+        order.type().map(AttributeValue::fromS).ifPresent(value -> attributes.put("type", value));
+        order.foodsTotal().map(String::valueOf).map(AttributeValue::fromN).ifPresent(value -> attributes.put("foodsTotal", value));
+        order.taxes().map(String::valueOf).map(AttributeValue::fromN).ifPresent(value -> attributes.put("taxes", value));
+        order.discountAmount().map(String::valueOf).map(AttributeValue::fromN).ifPresent(value -> attributes.put("discountAmount", value));
+        order.offerAmount().map(String::valueOf).map(AttributeValue::fromN).ifPresent(value -> attributes.put("offerAmount", value));
+        order.offerType().map(AttributeValue::fromS).ifPresent(value -> attributes.put("offerType", value));
+        attributes.put("version", AttributeValue.fromN(String.valueOf(order.version())));
+        attributes.put("createdAt", AttributeValue.fromS(order.createdAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        attributes.put("updatedAt", AttributeValue.fromS(order.updatedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        return attributes;
+    }
+}
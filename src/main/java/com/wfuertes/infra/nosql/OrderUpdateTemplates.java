@@ -0,0 +1,113 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.Order;
+import com.wfuertes.domain.OrderUpdate;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+/**
+ * Update expressions and attribute name maps for every combination of optional {@code ORDER} attributes,
+ * built once so a write only has to fill in the attribute values it actually changes.
+ */
+final class OrderUpdateTemplates {
+    private static final String[] FIELDS = {"number", "type", "foodsTotal", "taxes", "discountAmount", "offerAmount", "offerType"};
+    private static final String[] VALUE_KEYS = new String[FIELDS.length];
+    private static final int NUMBER = 0;
+    private static final int TYPE = 1;
+    private static final int FOODS_TOTAL = 2;
+    private static final int TAXES = 3;
+    private static final int DISCOUNT_AMOUNT = 4;
+    private static final int OFFER_AMOUNT = 5;
+    private static final int OFFER_TYPE = 6;
+
+    private static final Template[] UPSERTS = new Template[1 << FIELDS.length];
+    private static final Template[] UPDATES = new Template[1 << FIELDS.length];
+
+    static {
+        for (int field = 0; field < FIELDS.length; field++) {
+            VALUE_KEYS[field] = ":" + FIELDS[field];
+        }
+        for (int mask = 0; mask < UPSERTS.length; mask++) {
+            UPSERTS[mask] = template(mask,
+                    List.of("#createdAt = if_not_exists(#createdAt, :updatedAt)", "#updatedAt = :updatedAt"),
+                    " ADD #version :increment",
+                    Map.of("#createdAt", "createdAt", "#updatedAt", "updatedAt", "#version", "version"));
+            UPDATES[mask] = template(mask,
+                    List.of("#updatedAt = :updatedAt", "#version = :version"),
+                    "",
+                    Map.of("#updatedAt", "updatedAt", "#version", "version"));
+        }
+    }
+
+    record Template(String updateExpression, Map<String, String> expressionAttributeNames) {
+    }
+
+    record Values(Template template, Map<String, AttributeValue> expressionAttributeValues) {
+    }
+
+    private OrderUpdateTemplates() {
+    }
+
+    /**
+     * SETs the changed attributes, keeps the first createdAt and increments the version by {@code increment}.
+     */
+    static Values upsert(OrderUpdate update, int increment) {
+        final Map<String, AttributeValue> values = new HashMap<>(16);
+        int mask = 0;
+        mask |= put(values, NUMBER, update.number().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, TYPE, update.type().map(AttributeValue::fromS));
+        mask |= put(values, FOODS_TOTAL, update.foodsTotal().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, TAXES, update.taxes().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, DISCOUNT_AMOUNT, update.discountAmount().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, OFFER_AMOUNT, update.offerAmount().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, OFFER_TYPE, update.offerType().map(AttributeValue::fromS));
+        values.put(":updatedAt", AttributeValue.fromS(update.updatedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        values.put(":increment", AttributeValue.fromN(String.valueOf(increment)));
+        return new Values(UPSERTS[mask], values);
+    }
+
+    /**
+     * SETs the present attributes of the snapshot together with its new version.
+     */
+    static Values update(Order order) {
+        final Map<String, AttributeValue> values = new HashMap<>(16);
+        int mask = 0;
+        mask |= put(values, NUMBER, order.number().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, TYPE, order.type().map(AttributeValue::fromS));
+        mask |= put(values, FOODS_TOTAL, order.foodsTotal().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, TAXES, order.taxes().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, DISCOUNT_AMOUNT, order.discountAmount().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, OFFER_AMOUNT, order.offerAmount().map(String::valueOf).map(AttributeValue::fromN));
+        mask |= put(values, OFFER_TYPE, order.offerType().map(AttributeValue::fromS));
+        values.put(":updatedAt", AttributeValue.fromS(order.updatedAt().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME)));
+        values.put(":version", AttributeValue.fromN(String.valueOf(order.version())));
+        return new Values(UPDATES[mask], values);
+    }
+
+    private static int put(Map<String, AttributeValue> values, int field, Optional<AttributeValue> value) {
+        if (value.isEmpty()) {
+            return 0;
+        }
+        values.put(VALUE_KEYS[field], value.get());
+        return 1 << field;
+    }
+
+    private static Template template(int mask, List<String> fixedSets, String suffix, Map<String, String> fixedNames) {
+        final StringJoiner updateExpr = new StringJoiner(", ", "SET ", "");
+        final Map<String, String> exprAttrNames = new HashMap<>(fixedNames);
+        fixedSets.forEach(updateExpr::add);
+        for (int field = 0; field < FIELDS.length; field++) {
+            if ((mask & (1 << field)) != 0) {
+                updateExpr.add("#%s = %s".formatted(FIELDS[field], VALUE_KEYS[field]));
+                exprAttrNames.put("#" + FIELDS[field], FIELDS[field]);
+            }
+        }
+        return new Template(updateExpr + suffix, Map.copyOf(exprAttrNames));
+    }
+}
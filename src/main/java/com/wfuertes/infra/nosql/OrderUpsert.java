@@ -0,0 +1,55 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.OrderUpdate;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.util.Map;
+
+/**
+ * The single update expression that creates or updates the {@code ORDER} item from an {@link OrderUpdate}
+ * within the transaction committing its events.
+ */
+record OrderUpsert(Map<String, AttributeValue> key,
+                   String updateExpression,
+                   String conditionExpression,
+                   Map<String, String> expressionAttributeNames,
+                   Map<String, AttributeValue> expressionAttributeValues) {
+
+    /**
+     * The version moves by one per event, so an update merged from several events increments it by their count.
+     */
+    static OrderUpsert of(OrderUpdate update, int events) {
+        final var upsert = OrderUpdateTemplates.upsert(update, events);
+        final var exprAttrValues = upsert.expressionAttributeValues();
+
+        String condition = null;
+        if (update.expectedVersion().isPresent()) {
+            final long expectedVersion = update.expectedVersion().get();
+            if (expectedVersion == 0L) {
+                condition = "attribute_not_exists(pk)";
+            } else {
+                condition = "#version = :expectedVersion";
+                exprAttrValues.put(":expectedVersion", AttributeValue.fromN(String.valueOf(expectedVersion)));
+            }
+        }
+
+        return new OrderUpsert(OrderItems.key(update.id()),
+                upsert.template().updateExpression(),
+                condition,
+                upsert.template().expressionAttributeNames(),
+                exprAttrValues);
+    }
+
+    Update toTransactUpdate(String tableName) {
+        return Update
+                .builder()
+                .tableName(tableName)
+                .key(key)
+                .updateExpression(updateExpression)
+                .conditionExpression(conditionExpression)
+                .expressionAttributeNames(expressionAttributeNames)
+                .expressionAttributeValues(expressionAttributeValues)
+                .build();
+    }
+}
@@ -0,0 +1,15 @@
+package com.wfuertes.infra.nosql;
+
+import java.time.Duration;
+
+/**
+ * How {@code findById} bounds its latency: every attempt (the SDK retries a failed one) is cut off after
+ * {@code attemptTimeout}, and when {@code hedged} the async repository sends a second request if the first one is
+ * slower than the p95 of the reads so far.
+ */
+public record ReadPolicy(Duration attemptTimeout, boolean hedged) {
+
+    public static ReadPolicy defaults() {
+        return new ReadPolicy(Duration.ofMillis(500), true);
+    }
+}
@@ -0,0 +1,103 @@
+package com.wfuertes.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConflictRetryTest {
+    private final ConflictRetry conflictRetry = new ConflictRetry(3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Test
+    void retriesAConflictUntilTheWriteSucceeds() {
+        final var attempts = new AtomicInteger();
+
+        conflictRetry.run(() -> attempts.incrementAndGet() < 3 ? conflict() : CompletableFuture.completedFuture(null)).join();
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, conflictRetry.conflicts());
+        assertEquals(2, conflictRetry.retries());
+        assertEquals(0, conflictRetry.exhausted());
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        final var attempts = new AtomicInteger();
+
+        final var err = assertThrows(CompletionException.class, () -> conflictRetry.run(() -> {
+            attempts.incrementAndGet();
+            return conflict();
+        }).join());
+
+        assertInstanceOf(OrderVersionConflict.class, err.getCause());
+        assertEquals(3, attempts.get());
+        assertEquals(3, conflictRetry.conflicts());
+        assertEquals(2, conflictRetry.retries());
+        assertEquals(1, conflictRetry.exhausted());
+    }
+
+    @Test
+    void passesOtherFailuresThroughWithoutRetrying() {
+        final var attempts = new AtomicInteger();
+        final var failure = new IllegalStateException("boom");
+
+        final var err = assertThrows(CompletionException.class, () -> conflictRetry.run(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.failedFuture(new CompletionException(failure));
+        }).join());
+
+        assertSame(failure, err.getCause());
+        assertEquals(1, attempts.get());
+        assertEquals(0, conflictRetry.conflicts());
+    }
+
+    @Test
+    void passesAThrowingAttemptThrough() {
+        final var failure = new IllegalStateException("boom");
+
+        final var err = assertThrows(CompletionException.class, () -> conflictRetry.run(() -> {
+            throw failure;
+        }).join());
+
+        assertSame(failure, err.getCause());
+    }
+
+    @Test
+    void backoffStaysWithinTheExponentialCeiling() {
+        final var retry = new ConflictRetry(40, Duration.ofMillis(20), Duration.ofMillis(500));
+        for (int attempts = 1; attempts < 40; attempts++) {
+            final long ceiling = Math.min(500, 20L << (attempts - 1));
+            for (int i = 0; i < 1_000; i++) {
+                final long delay = retry.backoffMillis(attempts);
+                assertTrue(delay >= 0 && delay <= ceiling, "attempt %d waited %dms".formatted(attempts, delay));
+            }
+        }
+    }
+
+    @Test
+    void backoffIsSpreadOverTheWholeRange() {
+        final var retry = new ConflictRetry(5, Duration.ofMillis(20), Duration.ofMillis(500));
+        long shortest = Long.MAX_VALUE;
+        long longest = 0;
+        for (int i = 0; i < 1_000; i++) {
+            final long delay = retry.backoffMillis(5);
+            shortest = Math.min(shortest, delay);
+            longest = Math.max(longest, delay);
+        }
+
+        assertTrue(shortest < 32, "shortest %dms".formatted(shortest));
+        assertTrue(longest > 288, "longest %dms".formatted(longest));
+    }
+
+    private static CompletableFuture<Void> conflict() {
+        return CompletableFuture.failedFuture(new OrderVersionConflict("order-1", null));
+    }
+}
@@ -0,0 +1,201 @@
+package com.wfuertes.domain;
+
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderRehydratorTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 11, 14, 22, 13, 20);
+
+    private final InMemoryEvents events = new InMemoryEvents();
+    private final InMemorySnapshots snapshots = new InMemorySnapshots();
+
+    @Test
+    void rejectsSnapshotEveryBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new OrderRehydrator(null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> new OrderRehydrator(null, null, -1));
+    }
+
+    @Test
+    void findsNothingForAnOrderWithoutEvents() {
+        assertEquals(Optional.empty(), new OrderRehydrator(events, snapshots, 1).rehydrate("order-1"));
+        assertEquals(List.of(), snapshots.saved);
+    }
+
+    @Test
+    void foldsTheWholeStreamWithoutSnapshot() {
+        recordAll();
+
+        final var order = new OrderRehydrator(events, snapshots, 10).rehydrate("order-1").orElseThrow();
+
+        assertEquals(Order.builder()
+                .id("order-1")
+                .number(42L)
+                .type("DELIVERY")
+                .foodsTotal(1_000)
+                .taxes(100)
+                .discountAmount(50)
+                .offerAmount(20)
+                .offerType("SUPER_10")
+                .version(4L)
+                .createdAt(NOW)
+                .updatedAt(NOW.plusMinutes(3))
+                .build(), order);
+        assertEquals(List.of("all"), events.reads);
+        assertTrue(events.closed);
+    }
+
+    @Test
+    void foldsOnlyTheEventsAfterTheSnapshotPosition() {
+        recordAll();
+        final var snapshotted = Order.builder()
+                .id("order-1")
+                .number(42L)
+                .type("DELIVERY")
+                .discountAmount(50)
+                .version(2L)
+                .createdAt(NOW)
+                .updatedAt(NOW.plusMinutes(1))
+                .build();
+        snapshots.save(new OrderSnapshot(snapshotted, "ORDER_EVENT#2"));
+        snapshots.saved.clear();
+
+        final var order = new OrderRehydrator(events, snapshots, 10).rehydrate("order-1").orElseThrow();
+
+        assertEquals(snapshotted.toBuilder()
+                .foodsTotal(1_000)
+                .taxes(100)
+                .offerAmount(20)
+                .offerType("SUPER_10")
+                .version(4L)
+                .updatedAt(NOW.plusMinutes(3))
+                .build(), order);
+        assertEquals(List.of("after ORDER_EVENT#2"), events.reads);
+    }
+
+    @Test
+    void snapshotsOnceTheTailReachesTheThreshold() {
+        recordAll();
+
+        final var order = new OrderRehydrator(events, snapshots, 4).rehydrate("order-1").orElseThrow();
+
+        assertEquals(List.of(new OrderSnapshot(order, "ORDER_EVENT#4")), snapshots.saved);
+    }
+
+    @Test
+    void doesNotSnapshotATailBelowTheThreshold() {
+        recordAll();
+
+        new OrderRehydrator(events, snapshots, 5).rehydrate("order-1");
+
+        assertEquals(List.of(), snapshots.saved);
+    }
+
+    @Test
+    void countsOnlyTheTailAfterTheSnapshotTowardsTheThreshold() {
+        recordAll();
+        final var rehydrator = new OrderRehydrator(events, snapshots, 2);
+        rehydrator.rehydrate("order-1");
+        snapshots.saved.clear();
+        events.record(new OrderOffer("order-1", 30, "SUPER_20", "event-5"));
+
+        final var order = rehydrator.rehydrate("order-1").orElseThrow();
+
+        assertEquals(5L, order.version());
+        assertEquals(Optional.of("SUPER_20"), order.offerType());
+        assertEquals(List.of(), snapshots.saved);
+    }
+
+    private void recordAll() {
+        events.record(new OrderCreated("order-1", 42L, "DELIVERY", "event-1"));
+        events.record(new OrderDiscount("order-1", 50, "event-2"));
+        events.record(new OrderCompleted("order-1", 1_000, 100, "event-3"));
+        events.record(new OrderOffer("order-1", 20, "SUPER_10", "event-4"));
+    }
+
+    /**
+     * One order's stream, positioned by sort keys numbered in recording order and recorded a minute apart.
+     */
+    private static final class InMemoryEvents implements OrderEventRepository {
+        private final List<RecordedEvent> recorded = new ArrayList<>();
+        private final List<String> reads = new ArrayList<>();
+        private boolean closed;
+
+        void record(com.wfuertes.infra.events.Order event) {
+            recorded.add(new RecordedEvent("ORDER_EVENT#" + (recorded.size() + 1), NOW.plusMinutes(recorded.size()), event));
+        }
+
+        @Override
+        public void save(OrderCreated orderCreated) {
+            record(orderCreated);
+        }
+
+        @Override
+        public void save(OrderCompleted orderCompleted) {
+            record(orderCompleted);
+        }
+
+        @Override
+        public void save(OrderOffer orderOffer) {
+            record(orderOffer);
+        }
+
+        @Override
+        public void save(OrderDiscount orderDiscount) {
+            record(orderDiscount);
+        }
+
+        @Override
+        public Stream<RecordedEvent> loadEvents(String orderId) {
+            reads.add("all");
+            return stream(List.copyOf(recorded));
+        }
+
+        @Override
+        public Stream<RecordedEvent> loadEventsAfter(String orderId, String sk) {
+            reads.add("after " + sk);
+            return stream(recorded.stream().filter(recordedEvent -> recordedEvent.sk().compareTo(sk) > 0).toList());
+        }
+
+        @Override
+        public Stream<RecordedEvent> loadEventsSince(String orderId, Instant since) {
+            throw new UnsupportedOperationException();
+        }
+
+        private Stream<RecordedEvent> stream(List<RecordedEvent> events) {
+            closed = false;
+            return events.stream().onClose(() -> closed = true);
+        }
+    }
+
+    private static final class InMemorySnapshots implements OrderSnapshotRepository {
+        private final Map<String, OrderSnapshot> snapshots = new HashMap<>();
+        private final List<OrderSnapshot> saved = new ArrayList<>();
+
+        @Override
+        public void save(OrderSnapshot snapshot) {
+            snapshots.put(snapshot.order().id(), snapshot);
+            saved.add(snapshot);
+        }
+
+        @Override
+        public Optional<OrderSnapshot> findById(String orderId) {
+            return Optional.ofNullable(snapshots.get(orderId));
+        }
+    }
+}
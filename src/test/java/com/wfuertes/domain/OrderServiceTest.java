@@ -0,0 +1,234 @@
+package com.wfuertes.domain;
+
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderServiceTest {
+    private final FakeJournal journal = new FakeJournal();
+    private final ConflictRetry conflictRetry = new ConflictRetry(3, Duration.ofMillis(1), Duration.ofMillis(5));
+
+    @Test
+    void dropsRecentlyAppliedEventWithoutWriting() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        final var created = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+
+        orderService.handleOrderCreated(created);
+        orderService.handleOrderCreated(created);
+
+        assertEquals(List.of(List.of("event-1")), journal.writes);
+        assertEquals(1, orderService.duplicates());
+    }
+
+    @Test
+    void writesOnlyTheEventsTheJournalHasNotSeen() {
+        final var created = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+        final var discount = new OrderDiscount("order-1", 10, "event-2");
+        new OrderService(journal, journal, conflictRetry, new RecentEventIds(100)).handleAllAsync(List.of(created)).join();
+
+        // Another process, or this one after its recent ids moved on
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        orderService.handleAllAsync(List.of(created, discount)).join();
+
+        assertEquals(List.of(List.of("event-1"), List.of("event-2")), journal.writes);
+        assertEquals(1, orderService.duplicates());
+    }
+
+    @Test
+    void mergesACoalescedGroupIntoOneWriteTheLaterEventsWinning() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        orderService.handleOrderCreated(new OrderCreated("order-1", 42L, "DELIVERY", "event-1"));
+
+        orderService.handleAllAsync(List.of(
+                new OrderDiscount("order-1", 10, "event-2"),
+                new OrderOffer("order-1", 5, "SUPER_10", "event-3"),
+                new OrderDiscount("order-1", 20, "event-4"),
+                new OrderCompleted("order-1", 1_000, 100, "event-5"))).join();
+
+        assertEquals(List.of(List.of("event-1"), List.of("event-2", "event-3", "event-4", "event-5")), journal.writes);
+        final var merged = journal.updates.get(1);
+        assertEquals(Optional.of(1L), merged.expectedVersion());
+        assertEquals(Optional.empty(), merged.number());
+        assertEquals(Optional.of(20), merged.discountAmount());
+        assertEquals(Optional.of(5), merged.offerAmount());
+        assertEquals(Optional.of("SUPER_10"), merged.offerType());
+        assertEquals(Optional.of(1_000), merged.foodsTotal());
+        assertEquals(Optional.of(100), merged.taxes());
+        assertEquals(5L, journal.versions.get("order-1"));
+    }
+
+    @Test
+    void dropsTheDuplicatesOfACoalescedGroup() {
+        final var recentEventIds = new RecentEventIds(100);
+        final var orderService = new OrderService(journal, journal, conflictRetry, recentEventIds);
+        orderService.handleOrderCreated(new OrderCreated("order-1", 42L, "DELIVERY", "event-1"));
+        // Appended by another process, so only the journal knows it
+        new OrderService(journal, journal, conflictRetry, new RecentEventIds(100))
+                .handlerOrderDiscount(new OrderDiscount("order-1", 10, "event-2"));
+        final var offer = new OrderOffer("order-1", 5, "SUPER_10", "event-3");
+
+        orderService.handleAllAsync(List.of(
+                new OrderCreated("order-1", 42L, "DELIVERY", "event-1"),
+                new OrderDiscount("order-1", 10, "event-2"),
+                offer,
+                offer,
+                new OrderCompleted("order-1", 1_000, 100, "event-4"))).join();
+
+        assertEquals(List.of(List.of("event-1"), List.of("event-2"), List.of("event-3", "event-4")), journal.writes);
+        assertEquals(3, orderService.duplicates());
+        assertEquals(4L, journal.versions.get("order-1"));
+        assertTrue(recentEventIds.contains("event-2"));
+        assertTrue(recentEventIds.contains("event-4"));
+    }
+
+    @Test
+    void skipsTheWriteOfACoalescedGroupOfDuplicates() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        final var created = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+        final var discount = new OrderDiscount("order-1", 10, "event-2");
+        orderService.handleAllAsync(List.of(created, discount)).join();
+
+        orderService.handleAllAsync(List.of(discount, created)).join();
+
+        assertEquals(List.of(List.of("event-1", "event-2")), journal.writes);
+        assertEquals(2, orderService.duplicates());
+    }
+
+    @Test
+    void rejectsAGroupSpanningOrders() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+
+        final var err = assertThrows(CompletionException.class, () -> orderService.handleAllAsync(List.of(
+                new OrderCreated("order-1", 42L, "DELIVERY", "event-1"),
+                new OrderCreated("order-2", 43L, "DELIVERY", "event-2"))).join());
+
+        assertInstanceOf(IllegalArgumentException.class, err.getCause());
+        assertEquals(List.of(), journal.writes);
+    }
+
+    @Test
+    void alwaysAppliesEventsWithoutId() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        final var offer = new OrderOffer("order-1", 5, "SUPER_10", null);
+
+        orderService.handlerOrderOffer(offer);
+        orderService.handlerOrderOffer(offer);
+
+        assertEquals(2, journal.writes.size());
+        assertEquals(0, orderService.duplicates());
+    }
+
+    @Test
+    void recentEventIdsForgetTheLeastRecentlySeen() {
+        final var recentEventIds = new RecentEventIds(2);
+        recentEventIds.add("event-1");
+        recentEventIds.add("event-2");
+        recentEventIds.contains("event-1");
+        recentEventIds.add("event-3");
+
+        assertEquals(List.of(true, false, true), List.of(
+                recentEventIds.contains("event-1"),
+                recentEventIds.contains("event-2"),
+                recentEventIds.contains("event-3")));
+    }
+
+    @Test
+    void retriesWithTheNewVersionWhenTheOrderChangedAfterTheRead() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        orderService.handleOrderCreated(new OrderCreated("order-1", 42L, "DELIVERY", "event-1"));
+        journal.concurrentWrites = 1;
+
+        orderService.handlerOrderDiscount(new OrderDiscount("order-1", 10, "event-2"));
+
+        assertEquals(List.of(0L, 1L, 2L), journal.expectedVersions);
+        assertEquals(1, conflictRetry.retries());
+        assertEquals(List.of(List.of("event-1"), List.of("event-2")), journal.writes);
+    }
+
+    @Test
+    void failsWhenTheOrderKeepsChanging() {
+        final var orderService = new OrderService(journal, journal, conflictRetry, new RecentEventIds(100));
+        journal.concurrentWrites = 3;
+
+        final var err = assertThrows(UnableHandlingEvent.class,
+                () -> orderService.handleOrderCreated(new OrderCreated("order-1", 42L, "DELIVERY", "event-1")));
+
+        assertInstanceOf(OrderVersionConflict.class, err.getCause());
+        assertEquals(1, conflictRetry.exhausted());
+        assertEquals(List.of(), journal.writes);
+    }
+
+    /**
+     * Rejects a write carrying an event id it has already appended, as the conditional event id markers do, and one
+     * expecting another version than the stored one, as the condition on the order item does.
+     */
+    private static final class FakeJournal implements OrderJournal, AsyncOrderRepository {
+        private final Set<String> appended = new HashSet<>();
+        private final Map<String, Long> versions = new HashMap<>();
+        private final List<List<String>> writes = new ArrayList<>();
+        private final List<OrderUpdate> updates = new ArrayList<>();
+        private final List<Long> expectedVersions = new ArrayList<>();
+        // Writes of another process landing between the next reads and their append
+        private int concurrentWrites;
+
+        @Override
+        public synchronized CompletableFuture<Optional<com.wfuertes.domain.Order>> findById(String orderId) {
+            final var order = Optional.ofNullable(versions.get(orderId)).map(version -> com.wfuertes.domain.Order
+                    .builder()
+                    .id(orderId)
+                    .version(version)
+                    .createdAt(LocalDateTime.MIN)
+                    .updatedAt(LocalDateTime.MIN)
+                    .build());
+            if (concurrentWrites > 0) {
+                concurrentWrites--;
+                versions.merge(orderId, 1L, Long::sum);
+            }
+            return CompletableFuture.completedFuture(order);
+        }
+
+        @Override
+        public synchronized CompletableFuture<Void> append(OrderUpdate update, List<? extends Order> events) {
+            final long expectedVersion = update.expectedVersion().orElseThrow();
+            expectedVersions.add(expectedVersion);
+            if (expectedVersion != versions.getOrDefault(update.id(), 0L)) {
+                return CompletableFuture.failedFuture(new OrderVersionConflict(update.id(), null));
+            }
+            final var duplicate = events
+                    .stream()
+                    .map(Order::eventId)
+                    .filter(appended::contains)
+                    .collect(Collectors.toSet());
+            if (!duplicate.isEmpty()) {
+                return CompletableFuture.failedFuture(new DuplicateEvents(update.id(), duplicate, null));
+            }
+            events.stream().map(Order::eventId).filter(Objects::nonNull).forEach(appended::add);
+            writes.add(events.stream().map(Order::eventId).toList());
+            updates.add(update);
+            versions.merge(update.id(), (long) events.size(), Long::sum);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.domain.OrderVersionConflict;
+import com.wfuertes.domain.UnableHandlingEvent;
+import com.wfuertes.infra.aws.FailureClassifier.Failure;
+import com.wfuertes.infra.events.OrderCreated;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FailureClassifierTest {
+
+    @Test
+    void retriesTransactionCancelledByThrottling() {
+        final var cancelled = cancelled("None", "ThrottlingError");
+
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(cancelled));
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(new CompletionException(cancelled)));
+    }
+
+    @Test
+    void retriesTransactionCancelledByConflict() {
+        final var cancelled = cancelled("TransactionConflict", "None");
+
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(cancelled));
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(new CompletionException(cancelled)));
+    }
+
+    @Test
+    void rejectsTransactionCancelledByValidation() {
+        assertEquals(Failure.POISON, FailureClassifier.classify(cancelled("ValidationError")));
+    }
+
+    @Test
+    void retriesVersionConflict() {
+        final var conflict = new OrderVersionConflict("order-1", new IllegalStateException());
+
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(new CompletionException(conflict)));
+    }
+
+    @Test
+    void rejectsUndecodableMessage() {
+        assertEquals(Failure.POISON, FailureClassifier.classify(new IllegalArgumentException("Unknown event")));
+    }
+
+    @Test
+    void leavesUnknownFailuresToRedelivery() {
+        assertEquals(Failure.UNKNOWN, FailureClassifier.classify(new IllegalStateException("Unexpected")));
+        assertEquals(Failure.UNKNOWN, FailureClassifier.classify(new CompletionException(new NullPointerException())));
+    }
+
+    @Test
+    void classifiesTheCauseOfAHandlingFailure() {
+        final var event = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+        final var conflict = new OrderVersionConflict("order-1", null);
+        final var failure = new CompletionException(new UnableHandlingEvent(event, conflict));
+
+        assertSame(conflict, FailureClassifier.rootOf(failure));
+        assertEquals(Failure.RETRYABLE, FailureClassifier.classify(failure));
+        assertEquals(Failure.POISON, FailureClassifier.classify(new UnableHandlingEvent(event, new IllegalArgumentException())));
+        assertEquals(Failure.UNKNOWN, FailureClassifier.classify(new UnableHandlingEvent(event, new IllegalStateException())));
+    }
+
+    private static TransactionCanceledException cancelled(String... codes) {
+        final var reasons = new CancellationReason[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            reasons[i] = CancellationReason.builder().code(codes[i]).build();
+        }
+        // As DynamoDB answers a cancelled transaction
+        final var builder = TransactionCanceledException.builder();
+        builder.statusCode(400);
+        return builder
+                .message("Transaction cancelled")
+                .cancellationReasons(reasons)
+                .build();
+    }
+}
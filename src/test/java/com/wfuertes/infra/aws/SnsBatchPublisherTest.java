@@ -0,0 +1,192 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderOffer;
+import com.wfuertes.infra.json.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sns.SnsAsyncClient;
+import software.amazon.awssdk.services.sns.model.BatchResultErrorEntry;
+import software.amazon.awssdk.services.sns.model.CreateTopicRequest;
+import software.amazon.awssdk.services.sns.model.CreateTopicResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequest;
+import software.amazon.awssdk.services.sns.model.PublishBatchRequestEntry;
+import software.amazon.awssdk.services.sns.model.PublishBatchResponse;
+import software.amazon.awssdk.services.sns.model.PublishBatchResultEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnsBatchPublisherTest {
+    // Long enough for batches to only go out when full, or flushed
+    private static final Duration LINGER = Duration.ofHours(1);
+
+    private final List<PublishBatchRequest> batches = new CopyOnWriteArrayList<>();
+    private final Set<String> failingIds = new HashSet<>();
+    private volatile boolean failRequests;
+    private final SnsAsyncClient snsClient = new SnsAsyncClient() {
+        @Override
+        public CompletableFuture<CreateTopicResponse> createTopic(CreateTopicRequest request) {
+            return CompletableFuture.completedFuture(CreateTopicResponse.builder().topicArn("arn:" + request.name()).build());
+        }
+
+        @Override
+        public CompletableFuture<PublishBatchResponse> publishBatch(PublishBatchRequest request) {
+            batches.add(request);
+            if (failRequests) {
+                return CompletableFuture.failedFuture(new IllegalStateException("SNS unavailable"));
+            }
+            final var successful = new ArrayList<PublishBatchResultEntry>();
+            final var failed = new ArrayList<BatchResultErrorEntry>();
+            for (final var entry : request.publishBatchRequestEntries()) {
+                if (failingIds.contains(entry.id())) {
+                    failed.add(BatchResultErrorEntry.builder().id(entry.id()).code("InternalError").message("try again").build());
+                } else {
+                    successful.add(PublishBatchResultEntry.builder().id(entry.id()).messageId(batches.size() + "-" + entry.id()).build());
+                }
+            }
+            return CompletableFuture.completedFuture(PublishBatchResponse.builder().successful(successful).failed(failed).build());
+        }
+
+        @Override
+        public String serviceName() {
+            return "sns";
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private final List<SnsBatchPublisher> publishers = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        publishers.forEach(SnsBatchPublisher::close);
+    }
+
+    @Test
+    void sendsFullBatchesRightAwayAndTheRestOnFlush() {
+        final var publisher = publisher(Topology.FANOUT);
+        final var published = new ArrayList<CompletableFuture<String>>();
+
+        for (int i = 0; i < 23; i++) {
+            published.add(publisher.publish(SnsPublisher.ORDER_CREATED, created(i)));
+        }
+        assertEquals(List.of(10, 10), batchSizes());
+
+        publisher.flush();
+        assertEquals(List.of(10, 10, 3), batchSizes());
+        assertEquals("arn:" + SnsPublisher.ORDER_CREATED, batches.get(2).topicArn());
+        assertEquals("3-2", published.get(22).join());
+    }
+
+    @Test
+    void startsANewBatchBeforeGoingAboveTheSizeLimit() {
+        final var publisher = publisher(Topology.FANOUT);
+        final var offerType = "x".repeat(100_000);
+
+        for (int i = 0; i < 5; i++) {
+            publisher.publish(SnsPublisher.ORDER_OFFER, new OrderOffer("order-" + i, 10, offerType, "event-" + i));
+        }
+        publisher.flush();
+
+        assertEquals(List.of(2, 2, 1), batchSizes());
+        for (final var batch : batches) {
+            final var bytes = batch.publishBatchRequestEntries()
+                    .stream()
+                    .mapToInt(entry -> entry.message().getBytes(StandardCharsets.UTF_8).length)
+                    .sum();
+            assertTrue(bytes <= SnsBatchPublisher.MAX_BATCH_BYTES, "batch of %d bytes".formatted(bytes));
+        }
+    }
+
+    @Test
+    void failsAMessageAboveTheSizeLimitWithoutSendingIt() {
+        final var publisher = publisher(Topology.FANOUT);
+
+        final var published = publisher.publish(SnsPublisher.ORDER_OFFER, new OrderOffer("order-1", 10, "x".repeat(300_000), "event-1"));
+        publisher.flush();
+
+        final var err = assertThrows(CompletionException.class, published::join);
+        assertInstanceOf(IllegalArgumentException.class, err.getCause());
+        assertEquals(List.of(), batches);
+    }
+
+    @Test
+    void failsOnlyTheEntriesSnsRejected() {
+        failingIds.add("1");
+        failingIds.add("3");
+        final var publisher = publisher(Topology.FANOUT);
+        final var published = new ArrayList<CompletableFuture<String>>();
+
+        for (int i = 0; i < 5; i++) {
+            published.add(publisher.publish(SnsPublisher.ORDER_CREATED, created(i)));
+        }
+        publisher.flush();
+
+        assertEquals("1-0", published.get(0).join());
+        assertEquals("1-2", published.get(2).join());
+        assertEquals("1-4", published.get(4).join());
+        for (final var rejected : List.of(published.get(1), published.get(3))) {
+            final var err = assertThrows(CompletionException.class, rejected::join);
+            assertInstanceOf(IllegalStateException.class, err.getCause());
+            assertTrue(err.getCause().getMessage().contains("InternalError"));
+        }
+    }
+
+    @Test
+    void failsTheWholeBatchWhenTheRequestFails() {
+        failRequests = true;
+        final var publisher = publisher(Topology.FANOUT);
+        final var published = new ArrayList<CompletableFuture<String>>();
+
+        for (int i = 0; i < 3; i++) {
+            published.add(publisher.publish(SnsPublisher.ORDER_CREATED, created(i)));
+        }
+        publisher.flush();
+
+        for (final var failed : published) {
+            assertThrows(CompletionException.class, failed::join);
+        }
+    }
+
+    @Test
+    void groupsFifoEntriesByOrderInPublishOrder() {
+        final var publisher = publisher(Topology.FIFO);
+
+        publisher.publish(SnsPublisher.ORDER_CREATED, created(1));
+        publisher.publish(SnsPublisher.ORDER_OFFER, new OrderOffer("order-1", 10, "SUPER_10", "event-offer"));
+        publisher.flush();
+
+        final var entries = batches.get(0).publishBatchRequestEntries();
+        assertEquals("arn:" + SnsPublisher.ORDER_EVENTS_FIFO, batches.get(0).topicArn());
+        assertEquals(List.of("order-1", "order-1"), entries.stream().map(PublishBatchRequestEntry::messageGroupId).toList());
+        assertEquals(List.of("event-1", "event-offer"), entries.stream().map(PublishBatchRequestEntry::messageDeduplicationId).toList());
+    }
+
+    private SnsBatchPublisher publisher(Topology topology) {
+        final var publisher = new SnsBatchPublisher(snsClient, new JsonParser(), TransportMode.RAW, topology, LINGER, 100);
+        publishers.add(publisher);
+        return publisher;
+    }
+
+    private List<Integer> batchSizes() {
+        return batches.stream().map(batch -> batch.publishBatchRequestEntries().size()).toList();
+    }
+
+    private static OrderCreated created(int i) {
+        return new OrderCreated("order-" + i, (long) i, "DELIVERY", "event-" + i);
+    }
+}
@@ -0,0 +1,103 @@
+package com.wfuertes.infra.aws;
+
+import com.wfuertes.infra.codec.BinaryEventCodec;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderOffer;
+import com.wfuertes.infra.json.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnsEnvelopeDecoderTest {
+    private static final OrderCreated CREATED = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+
+    private final JsonParser jsonParser = new JsonParser();
+
+    @Test
+    void decodesTheMessageOfAnEnvelope() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.ENVELOPE);
+
+        final var body = envelope(Map.of("Subject", "OrderCreated", "Message", jsonParser.toJson(CREATED)));
+
+        assertEquals(CREATED, decoder.decode(body, "OrderCreated", OrderCreated.class));
+    }
+
+    @Test
+    void decodesAMessagePublishedAsAJsonString() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.ENVELOPE);
+
+        final var body = envelope(Map.of("Subject", "OrderCreated", "Message", jsonParser.toJson(jsonParser.toJson(CREATED))));
+
+        assertEquals(CREATED, decoder.decode(body, "OrderCreated", OrderCreated.class));
+    }
+
+    @Test
+    void rejectsMalformedEnvelopes() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.ENVELOPE);
+        final var message = jsonParser.toJson(CREATED);
+
+        for (final var body : new String[]{
+                "not json",
+                "[1, 2]",
+                "{\"Subject\": \"OrderCreated\", \"Message\": ",
+                envelope(Map.of("Subject", "OrderCreated")),
+                envelope(Map.of("Subject", "OrderOffer", "Message", message)),
+                envelope(Map.of("Message", message)),
+                envelope(Map.of("Subject", "OrderCreated", "Message", "{\"orderNumber\": \"forty-two\"}"))}) {
+            assertThrows(IllegalArgumentException.class, () -> decoder.decode(body, "OrderCreated", OrderCreated.class), body);
+        }
+    }
+
+    @Test
+    void decodesARawJsonBody() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.RAW);
+
+        assertEquals(CREATED, decoder.decodeRaw(jsonParser.toJson(CREATED), OrderCreated.class));
+    }
+
+    @Test
+    void rejectsAMalformedRawJsonBody() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.RAW);
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.decodeRaw("{\"orderId\": ", OrderCreated.class));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decodeRaw("{\"orderNumber\": \"forty-two\"}", OrderCreated.class));
+    }
+
+    @Test
+    void decodesABase64BinaryBody() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.BINARY);
+        final var offer = new OrderOffer("order-1", 10, "SUPER_10".repeat(200), "event-2");
+
+        assertEquals(CREATED, decoder.decodeRaw(new BinaryEventCodec().encodeBase64(CREATED), OrderCreated.class));
+        // Deflated by a publisher compressing large events
+        assertEquals(offer, decoder.decodeRaw(new BinaryEventCodec(64).encodeBase64(offer), OrderOffer.class));
+    }
+
+    @Test
+    void rejectsMalformedBinaryBodies() {
+        final var decoder = new SnsEnvelopeDecoder(jsonParser, TransportMode.BINARY);
+        final var encoded = new BinaryEventCodec().encode(CREATED);
+        final var truncated = Base64.getEncoder().encodeToString(Arrays.copyOf(encoded, encoded.length / 2));
+
+        for (final var body : new String[]{"not base64!", "", truncated, jsonParser.toJson(CREATED)}) {
+            assertThrows(IllegalArgumentException.class, () -> decoder.decodeRaw(body, OrderCreated.class), body);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> decoder.decodeRaw(new BinaryEventCodec().encodeBase64(CREATED), OrderOffer.class));
+    }
+
+    private String envelope(Map<String, String> fields) {
+        final var envelope = new LinkedHashMap<String, String>();
+        envelope.put("Type", "Notification");
+        envelope.put("MessageId", "message-1");
+        envelope.putAll(fields);
+        envelope.put("Timestamp", "2023-11-14T22:13:20.123Z");
+        return jsonParser.toJson(envelope);
+    }
+}
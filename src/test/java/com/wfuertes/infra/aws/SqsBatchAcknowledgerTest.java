@@ -0,0 +1,62 @@
+package com.wfuertes.infra.aws;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequest;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchRequestEntry;
+import software.amazon.awssdk.services.sqs.model.DeleteMessageBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SqsBatchAcknowledgerTest {
+    private final List<String> deleted = new CopyOnWriteArrayList<>();
+    private final SqsClient sqsClient = new SqsClient() {
+        @Override
+        public DeleteMessageBatchResponse deleteMessageBatch(DeleteMessageBatchRequest request) {
+            request.entries().stream().map(DeleteMessageBatchRequestEntry::receiptHandle).forEach(deleted::add);
+            return DeleteMessageBatchResponse.builder().build();
+        }
+
+        @Override
+        public String serviceName() {
+            return "sqs";
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Test
+    void deletesFullBatchRightAway() {
+        final var acknowledger = new SqsBatchAcknowledger(sqsClient, "https://sqs/000/orders", Duration.ofMinutes(1));
+
+        for (int i = 0; i < SqsBatchAcknowledger.MAX_BATCH_SIZE; i++) {
+            acknowledger.acknowledge(message(i));
+        }
+
+        assertEquals(SqsBatchAcknowledger.MAX_BATCH_SIZE, deleted.size());
+        acknowledger.close();
+    }
+
+    @Test
+    void deletesPendingOnCloseAndLateAcknowledgementsRightAway() {
+        final var acknowledger = new SqsBatchAcknowledger(sqsClient, "https://sqs/000/orders", Duration.ofMinutes(1));
+        acknowledger.acknowledge(message(1));
+
+        acknowledger.close();
+        assertEquals(List.of("r-1"), deleted);
+
+        acknowledger.acknowledge(message(2));
+        assertEquals(List.of("r-1", "r-2"), deleted);
+    }
+
+    private static Message message(int i) {
+        return Message.builder().messageId("m-" + i).receiptHandle("r-" + i).build();
+    }
+}
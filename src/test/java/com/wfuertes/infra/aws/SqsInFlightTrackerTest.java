@@ -0,0 +1,64 @@
+package com.wfuertes.infra.aws;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import software.amazon.awssdk.services.sqs.model.ChangeMessageVisibilityBatchResponse;
+import software.amazon.awssdk.services.sqs.model.Message;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqsInFlightTrackerTest {
+
+    @Test
+    void untrackWaitsForTheHeartbeatExtendingTheMessage() throws Exception {
+        final var extending = new CountDownLatch(1);
+        final var proceed = new CountDownLatch(1);
+        final var sqsClient = new SqsClient() {
+            @Override
+            public ChangeMessageVisibilityBatchResponse changeMessageVisibilityBatch(ChangeMessageVisibilityBatchRequest request) {
+                if (request.entries().get(0).visibilityTimeout() > 0) {
+                    extending.countDown();
+                    await(proceed);
+                }
+                return ChangeMessageVisibilityBatchResponse.builder().build();
+            }
+
+            @Override
+            public String serviceName() {
+                return "sqs";
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final var message = Message.builder().messageId("m-1").receiptHandle("r-1").build();
+
+        try (final var tracker = new SqsInFlightTracker(sqsClient, "https://sqs/000/orders", Duration.ofSeconds(1), Duration.ofMinutes(1))) {
+            tracker.track(message);
+            assertTrue(extending.await(5, TimeUnit.SECONDS));
+
+            final var untracked = CompletableFuture.runAsync(() -> tracker.untrack(message));
+            Thread.sleep(100);
+            assertFalse(untracked.isDone());
+
+            proceed.countDown();
+            untracked.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.wfuertes.infra.codec;
+
+import com.wfuertes.infra.events.Order;
+import com.wfuertes.infra.events.OrderCompleted;
+import com.wfuertes.infra.events.OrderCreated;
+import com.wfuertes.infra.events.OrderDiscount;
+import com.wfuertes.infra.events.OrderOffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryEventCodecTest {
+    private static final int HEADER = BinaryEventCodec.VERSION << 4;
+
+    private final BinaryEventCodec codec = new BinaryEventCodec();
+
+    @Test
+    void roundTripsEveryEvent() {
+        for (final var event : events()) {
+            assertEquals(event, codec.decode(codec.encode(event)));
+            assertEquals(event, codec.decodeBase64(codec.encodeBase64(event), event.getClass()));
+        }
+    }
+
+    @Test
+    void roundTripsCompressedEvents() {
+        final var compressing = new BinaryEventCodec(1);
+        final var event = new OrderCreated("order-".repeat(20), 42L, "type-".repeat(20), null);
+
+        final var bytes = compressing.encode(event);
+
+        assertTrue(bytes.length < codec.encode(event).length);
+        assertEquals(event, compressing.decode(bytes));
+        assertEquals(event, codec.decode(bytes));
+    }
+
+    @Test
+    void rejectsUnexpectedType() {
+        final var bytes = codec.encode(new OrderDiscount("order-1", 10, null));
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(bytes, OrderCreated.class));
+    }
+
+    @Test
+    void rejectsEmptyAndUnknownVersion() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{(byte) ((BinaryEventCodec.VERSION + 1) << 4), 1, 0}));
+    }
+
+    @Test
+    void rejectsTruncatedEvent() {
+        final var bytes = codec.encode(new OrderOffer("order-1", 10, "SUPER_10", UUID.randomUUID().toString()));
+
+        for (int length = 1; length < bytes.length; length++) {
+            final var truncated = Arrays.copyOf(bytes, length);
+            assertThrows(IllegalArgumentException.class, () -> codec.decode(truncated));
+        }
+    }
+
+    @Test
+    void rejectsUnknownTypeTag() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{HEADER, 9, 0}));
+    }
+
+    @Test
+    void rejectsLengthPastTheEnd() {
+        // Literal of 2^31 - 1 bytes, wrapping the end position if added as an int
+        final var bytes = new byte[]{HEADER, 1, 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 'a'};
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(bytes));
+    }
+
+    @Test
+    void rejectsUnknownStringKind() {
+        // 2^32, which narrowed to an int would read as a literal
+        final var wrapping = new byte[]{HEADER, 1, 1, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10, 0};
+        final var pastInterned = new byte[]{HEADER, 1, 1, 100};
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(wrapping));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(pastInterned));
+    }
+
+    @Test
+    void rejectsNumberOutOfRange() {
+        final var bytes = new BinaryEventCodec().encode(new OrderCreated("order-1", 1L << 40, null, null));
+        // Same layout as an OrderDiscount of that amount
+        bytes[1] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(bytes));
+    }
+
+    @Test
+    void rejectsCompressedEventInflatingTooFar() {
+        final var deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(new byte[1024 * 1024]);
+        deflater.finish();
+        final var out = new ByteArrayOutputStream();
+        out.write(HEADER | 0x01);
+        final var buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(out.toByteArray()));
+    }
+
+    @Test
+    void rejectsCorruptCompressedEvent() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(new byte[]{HEADER | 0x01, (byte) 0xFF, (byte) 0xFF}));
+    }
+
+    private static List<Order> events() {
+        final var eventId = UUID.randomUUID().toString();
+        return List.of(
+                new OrderCreated(UUID.randomUUID().toString(), 123_456L, "DELIVERY", eventId),
+                new OrderCreated("order-1", -1L, "some other type", null),
+                new OrderCreated("order-1", null, null, null),
+                new OrderDiscount("order-1", 250, eventId),
+                new OrderDiscount("order-1", Integer.MIN_VALUE, null),
+                new OrderOffer("order-1", 100, "SUPER_10", "01HF3Z2N8Y4K6V7W9X0ABCDEFG"),
+                new OrderOffer("order-1", 0, "ação", null),
+                new OrderCompleted("order-1", 9_999, 1_234, eventId),
+                new OrderCompleted("order-1", Integer.MAX_VALUE, null, null));
+    }
+}
@@ -0,0 +1,97 @@
+package com.wfuertes.infra.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void rejectsInconsistentLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter("test", 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter("test", 2, 1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveLimiter("test", 1, 4, 2));
+    }
+
+    @Test
+    void unlimitedNeverHoldsACallBack() {
+        final var limiter = AdaptiveLimiter.unlimited();
+        final var calls = new ArrayList<CompletableFuture<Void>>();
+        for (int i = 0; i < 1_000; i++) {
+            limiter.run(err -> false, () -> {
+                final var call = new CompletableFuture<Void>();
+                calls.add(call);
+                return call;
+            });
+        }
+
+        assertEquals(1_000, calls.size());
+        assertEquals(1_000L, limiter.inFlight());
+        assertEquals(0L, limiter.queued());
+    }
+
+    @Test
+    void startsQueuedCallOnceAnotherCompletes() throws Exception {
+        final var limiter = new AdaptiveLimiter("test", 1, 2, 4);
+        final var calls = new ArrayList<CompletableFuture<String>>();
+        final var results = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 3; i++) {
+            final var call = new CompletableFuture<String>();
+            calls.add(call);
+            results.add(limiter.run(err -> false, () -> call));
+        }
+        assertEquals(2L, limiter.inFlight());
+        assertEquals(1L, limiter.queued());
+
+        calls.get(0).complete("first");
+        assertEquals("first", results.get(0).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        calls.get(2).complete("third");
+        assertEquals("third", results.get(2).get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(0L, limiter.queued());
+    }
+
+    @Test
+    void cutsTheLimitOnOverload() throws Exception {
+        final var limiter = new AdaptiveLimiter("test", 1, 4, 8);
+
+        final var result = limiter.run(err -> err instanceof IllegalStateException,
+                () -> CompletableFuture.failedFuture(new IllegalStateException("throttled")));
+
+        assertThrows(Exception.class, () -> result.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS));
+        assertEquals(2L, limiter.limit());
+        assertEquals(0L, limiter.inFlight());
+    }
+
+    @Test
+    void keepsTheLimitOnOtherFailures() {
+        final var limiter = new AdaptiveLimiter("test", 1, 4, 8);
+
+        final var result = limiter.run(err -> err instanceof IllegalStateException, () -> {
+            throw new IllegalArgumentException("rejected");
+        });
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(4L, limiter.limit());
+        assertEquals(0L, limiter.inFlight());
+    }
+
+    @Test
+    void awaitCapacityTimesOutWhileTheQueueIsFull() throws Exception {
+        final var limiter = new AdaptiveLimiter("test", 1, 1, 1);
+        assertTrue(limiter.awaitCapacity(Duration.ZERO));
+
+        limiter.run(err -> false, CompletableFuture::new);
+        limiter.run(err -> false, CompletableFuture::new);
+
+        assertFalse(limiter.awaitCapacity(Duration.ofMillis(20)));
+    }
+}
@@ -0,0 +1,114 @@
+package com.wfuertes.infra.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedExecutorTest {
+
+    @Test
+    void rejectsNoLanes() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyedExecutor("test", 0));
+    }
+
+    @Test
+    void runsTheTasksOfAKeyInSubmissionOrder() {
+        try (final var executor = new KeyedExecutor("test", 4)) {
+            final var started = new CopyOnWriteArrayList<Integer>();
+            final var running = new CopyOnWriteArrayList<Integer>();
+            final var tasks = new ArrayList<CompletableFuture<Void>>();
+            for (int i = 0; i < 50; i++) {
+                final var task = i;
+                tasks.add(executor.submitAsync("order-1", () -> {
+                    started.add(task);
+                    running.add(task);
+                    assertEquals(1, running.size());
+                    // Completes later on another thread, the next task must still wait for it
+                    return CompletableFuture.runAsync(() -> running.remove(Integer.valueOf(task)),
+                            CompletableFuture.delayedExecutor(ThreadLocalRandom.current().nextInt(3), TimeUnit.MILLISECONDS));
+                }));
+            }
+
+            CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+            final var expected = new ArrayList<Integer>();
+            for (int i = 0; i < 50; i++) {
+                expected.add(i);
+            }
+            assertEquals(expected, started);
+        }
+    }
+
+    @Test
+    void runsOtherKeysWhileATaskIsInFlight() throws Exception {
+        // A single lane, so both keys share its thread
+        try (final var executor = new KeyedExecutor("test", 1)) {
+            final var blocked = new CompletableFuture<Void>();
+            final var first = executor.submitAsync("order-1", () -> blocked);
+
+            final var other = executor.submitAsync("order-2", () -> CompletableFuture.completedFuture(null));
+
+            other.get(5, TimeUnit.SECONDS);
+            assertFalse(first.isDone());
+            blocked.complete(null);
+            first.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void failedTaskDoesNotHoldBackTheNextOne() throws Exception {
+        try (final var executor = new KeyedExecutor("test", 2)) {
+            final var thrown = executor.submitAsync("order-1", () -> {
+                throw new IllegalStateException("handler bug");
+            });
+            final var failed = executor.submitAsync("order-1",
+                    () -> CompletableFuture.failedFuture(new IllegalStateException("write failed")));
+            final var next = executor.submitAsync("order-1", () -> CompletableFuture.completedFuture(null));
+
+            next.get(5, TimeUnit.SECONDS);
+            assertTrue(thrown.isCompletedExceptionally());
+            assertTrue(failed.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void closeLetsStartedTasksFinishAndRejectsNewOnes() throws Exception {
+        final var executor = new KeyedExecutor("test", 2);
+        final var release = new CountDownLatch(1);
+        final var finished = new CompletableFuture<Void>();
+        executor.submitAsync("order-1", () -> {
+            await(release);
+            finished.complete(null);
+            return finished;
+        });
+
+        final var closing = CompletableFuture.runAsync(executor::close);
+        release.countDown();
+        closing.get(5, TimeUnit.SECONDS);
+        assertTrue(finished.isDone());
+
+        final var rejected = executor.submitAsync("order-1", () -> CompletableFuture.completedFuture(null));
+        final var err = assertThrows(CompletionException.class, rejected::join);
+        assertInstanceOf(RejectedExecutionException.class, err.getCause());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.wfuertes.infra.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void emptyHistogramReportsZero() {
+        final var histogram = new LatencyHistogram();
+
+        assertEquals(0L, histogram.count());
+        assertEquals(0.0, histogram.meanNanos());
+        assertEquals(0L, histogram.percentileNanos(99));
+    }
+
+    @Test
+    void percentilesStayWithinTheBucketError() {
+        final var histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1_000);
+        }
+
+        assertEquals(100_000L, histogram.count());
+        assertEquals(50_000_500.0, histogram.meanNanos(), 1.0);
+        assertEquals(100_000_000L, histogram.maxNanos());
+        assertWithin(50_000_000L, histogram.percentileNanos(50));
+        assertWithin(99_000_000L, histogram.percentileNanos(99));
+        assertEquals(100_000_000L, histogram.percentileNanos(100));
+    }
+
+    @Test
+    void negativeLatencyCountsAsZero() {
+        final var histogram = new LatencyHistogram();
+        histogram.record(-5);
+
+        assertEquals(0L, histogram.percentileNanos(50));
+        assertEquals(0L, histogram.maxNanos());
+    }
+
+    @Test
+    void everyValueFallsInABucketBoundingIt() {
+        final var random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            final var value = random.nextLong(Long.MAX_VALUE) >>> random.nextInt(63);
+            assertBucketHolds(value);
+        }
+        for (long value = 0; value < 1_000; value++) {
+            assertBucketHolds(value);
+        }
+        assertBucketHolds(Long.MAX_VALUE);
+    }
+
+    private static void assertBucketHolds(long value) {
+        final var index = LatencyHistogram.index(value);
+        assertTrue(LatencyHistogram.upperBound(index) >= value, () -> "%d above its bucket %d".formatted(value, index));
+        assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) < value,
+                () -> "%d below its bucket %d".formatted(value, index));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, () -> "%d not within 4%% of %d".formatted(actual, expected));
+    }
+}
@@ -0,0 +1,79 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.infra.metrics.Metrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class HedgedReadsTest {
+    private static final String LABEL = "test";
+
+    @Test
+    void sendsNoHedgeBeforeEnoughSamples() throws Exception {
+        final var stage = new Metrics(false).stage("finds");
+        final var attempts = new AtomicInteger();
+        final var hedgedReads = new HedgedReads(stage, LABEL, true);
+
+        final var read = hedgedReads.read(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.supplyAsync(() -> "order", CompletableFuture.delayedExecutor(50, TimeUnit.MILLISECONDS));
+        });
+
+        assertEquals("order", read.get(1, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void hedgedAttemptAnswersForSlowFirst() throws Exception {
+        final var stage = new Metrics(false).stage("finds");
+        for (int i = 0; i < 200; i++) {
+            stage.record(LABEL, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        final var attempts = new AtomicInteger();
+        final var hedgedReads = new HedgedReads(stage, LABEL, true);
+
+        final var read = hedgedReads.read(() -> attempts.incrementAndGet() == 1
+                ? new CompletableFuture<>()
+                : CompletableFuture.completedFuture("hedge"));
+
+        assertEquals("hedge", read.get(1, TimeUnit.SECONDS));
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void failsOnlyOnceEveryAttemptFailed() throws Exception {
+        final var stage = new Metrics(false).stage("finds");
+        for (int i = 0; i < 200; i++) {
+            stage.record(LABEL, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        final var attempts = new AtomicInteger();
+        final var first = new CompletableFuture<String>();
+        final var hedgedReads = new HedgedReads(stage, LABEL, true);
+
+        final var read = hedgedReads.read(() -> attempts.incrementAndGet() == 1
+                ? first
+                : CompletableFuture.failedFuture(new IllegalStateException("hedge failed")));
+        while (attempts.get() < 2) {
+            Thread.onSpinWait();
+        }
+        assertFalse(read.isDone());
+
+        first.complete("order");
+        assertEquals("order", read.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void passesThroughWhenDisabled() {
+        final var stage = new Metrics(false).stage("finds");
+        final var hedgedReads = new HedgedReads(stage, LABEL, false);
+        final var first = new CompletableFuture<String>();
+
+        assertSame(first, hedgedReads.read(() -> first));
+    }
+}
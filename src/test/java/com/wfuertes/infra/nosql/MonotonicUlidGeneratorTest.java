@@ -0,0 +1,69 @@
+package com.wfuertes.infra.nosql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonotonicUlidGeneratorTest {
+    private final MonotonicUlidGenerator generator = new MonotonicUlidGenerator();
+
+    @Test
+    void idsSortInGenerationOrder() {
+        final var ids = new ArrayList<String>();
+        for (int i = 0; i < 100_000; i++) {
+            ids.add(generator.next());
+        }
+
+        final var sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+        assertEquals(ids, sorted);
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() {
+        final var futures = new ArrayList<CompletableFuture<List<String>>>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                final var ids = new ArrayList<String>();
+                for (int i = 0; i < 10_000; i++) {
+                    ids.add(generator.next());
+                }
+                return ids;
+            }));
+        }
+
+        final var unique = new HashSet<String>();
+        futures.forEach(future -> unique.addAll(future.join()));
+        assertEquals(40_000, unique.size());
+    }
+
+    @Test
+    void timestampRoundTrips() {
+        final var instant = Instant.ofEpochMilli(1_700_000_000_123L);
+
+        assertEquals(instant, generator.timestampOf(generator.lowerBound(instant)));
+    }
+
+    @Test
+    void lowerBoundSortsBeforeIdsOfTheSameMillisecond() {
+        final var before = Instant.now();
+        final var id = generator.next();
+
+        assertTrue(generator.lowerBound(before).compareTo(id) <= 0);
+        assertTrue(generator.lowerBound(before.plusSeconds(1)).compareTo(id) > 0);
+    }
+
+    @Test
+    void rejectsInvalidCharacter() {
+        assertThrows(IllegalArgumentException.class, () -> generator.timestampOf("2023-11-14T22:13:20.123"));
+    }
+}
@@ -0,0 +1,129 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.infra.events.OrderCreated;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderEventItemsTest {
+    private final OrderEventItems eventItems = new OrderEventItems(new MonotonicUlidGenerator());
+
+    @Test
+    void readsBackWrittenEvent() {
+        final var before = LocalDateTime.ofInstant(Instant.now(), ZoneOffset.UTC).minusSeconds(1);
+        final var event = new OrderCreated("order-1", 42L, "DELIVERY", "event-1");
+
+        final var recorded = eventItems.fromItem(eventItems.toItem(event));
+
+        assertEquals(event, recorded.event());
+        assertTrue(recorded.recordedAt().isAfter(before));
+    }
+
+    @Test
+    void readsLegacyTimestampKey() {
+        final var item = new HashMap<String, AttributeValue>();
+        item.put("pk", AttributeValue.fromS("order-1"));
+        item.put("sk", AttributeValue.fromS("ORDER_EVENT#2023-11-14T22:13:20.123"));
+        item.put("eventType", AttributeValue.fromS("OrderCreated"));
+        item.put("eventContent", AttributeValue.fromM(Map.of(
+                "orderNumber", AttributeValue.fromN("42"),
+                "type", AttributeValue.fromS("DELIVERY"))));
+
+        final var recorded = eventItems.fromItem(item);
+
+        assertEquals(LocalDateTime.of(2023, 11, 14, 22, 13, 20, 123_000_000), recorded.recordedAt());
+        assertEquals(new OrderCreated("order-1", 42L, "DELIVERY", null), recorded.event());
+    }
+
+    @Test
+    void keepsAStreamMixingLegacyAndGeneratedKeysInOrder() {
+        final var ids = new SteppingIds(Instant.parse("2023-11-15T10:00:00Z"));
+        final var eventItems = new OrderEventItems(ids);
+        final var legacy = List.of(
+                legacySk(LocalDateTime.of(2023, 11, 14, 22, 13, 20, 123_000_000)),
+                legacySk(LocalDateTime.of(2023, 11, 14, 22, 13, 21)),
+                legacySk(LocalDateTime.of(2023, 11, 14, 22, 14, 5, 500_000_000)));
+        final var generated = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            generated.add(eventItems.toItem(new OrderCreated("order-1", 42L, "DELIVERY", "event-" + i)).get("sk").s());
+        }
+        final var stream = new ArrayList<>(legacy);
+        stream.addAll(generated);
+
+        // What a query on the ORDER_EVENT prefix returns
+        assertEquals(stream, stream.stream().sorted().toList());
+        assertEquals(LocalDateTime.of(2023, 11, 15, 10, 0, 2), eventItems.fromItem(item(generated.get(2))).recordedAt());
+
+        // Including the position itself, which the repository skips
+        assertEquals(stream.subList(1, 6), select(stream, List.of(OrderEventItems.afterRange(legacy.get(1)))));
+        assertEquals(stream.subList(4, 6), select(stream, List.of(OrderEventItems.afterRange(generated.get(1)))));
+        assertEquals(stream.subList(1, 6), select(stream, eventItems.sinceRanges(Instant.parse("2023-11-14T22:13:21Z"))));
+        assertEquals(stream.subList(4, 6), select(stream, eventItems.sinceRanges(Instant.parse("2023-11-15T10:00:01Z"))));
+        assertEquals(List.of(), select(stream, eventItems.sinceRanges(Instant.parse("2023-11-15T10:00:03Z"))));
+    }
+
+    private static String legacySk(LocalDateTime recordedAt) {
+        return "ORDER_EVENT#" + recordedAt.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+    }
+
+    private static Map<String, AttributeValue> item(String sk) {
+        final var item = new HashMap<String, AttributeValue>();
+        item.put("pk", AttributeValue.fromS("order-1"));
+        item.put("sk", AttributeValue.fromS(sk));
+        item.put("eventType", AttributeValue.fromS("OrderCreated"));
+        item.put("eventContent", AttributeValue.fromM(Map.of(
+                "orderNumber", AttributeValue.fromN("42"),
+                "type", AttributeValue.fromS("DELIVERY"))));
+        return item;
+    }
+
+    /**
+     * What BETWEEN matches of the stream, range after range.
+     */
+    private static List<String> select(List<String> stream, List<OrderEventItems.SkRange> ranges) {
+        return ranges
+                .stream()
+                .flatMap(range -> stream.stream().filter(sk -> sk.compareTo(range.from()) >= 0 && sk.compareTo(range.to()) <= 0))
+                .toList();
+    }
+
+    /**
+     * Generates the first ULID of every second from {@code start} on.
+     */
+    private static final class SteppingIds implements EventIdGenerator {
+        private final MonotonicUlidGenerator ulids = new MonotonicUlidGenerator();
+        private Instant next;
+
+        SteppingIds(Instant start) {
+            this.next = start;
+        }
+
+        @Override
+        public String next() {
+            final var id = ulids.lowerBound(next);
+            next = next.plusSeconds(1);
+            return id;
+        }
+
+        @Override
+        public String lowerBound(Instant instant) {
+            return ulids.lowerBound(instant);
+        }
+
+        @Override
+        public Instant timestampOf(String id) {
+            return ulids.timestampOf(id);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.Order;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderItemsTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 11, 14, 22, 13, 20);
+
+    @Test
+    void roundTripsSnapshot() {
+        final var order = Order.builder()
+                .id("order-1")
+                .number(42L)
+                .type("DELIVERY")
+                .foodsTotal(1_000)
+                .taxes(100)
+                .discountAmount(50)
+                .offerAmount(20)
+                .offerType("SUPER_10")
+                .version(4L)
+                .createdAt(NOW)
+                .updatedAt(NOW.plusMinutes(5))
+                .build();
+
+        assertEquals(order, OrderItems.deserialize(OrderItems.serializeToSave(order)));
+    }
+
+    @Test
+    void readsLegacySnapshot() {
+        final var item = new HashMap<String, AttributeValue>();
+        item.put("pk", AttributeValue.fromS("order-1"));
+        item.put("number", AttributeValue.fromS("42"));
+        item.put("discountTotal", AttributeValue.fromN("50"));
+        item.put("offerTpe", AttributeValue.fromS("SUPER_10"));
+        item.put("version", AttributeValue.fromN("3"));
+        item.put("createdAt", AttributeValue.fromS(NOW.toString()));
+        item.put("updatedAt", AttributeValue.fromS(NOW.toString()));
+
+        final var order = OrderItems.deserialize(item);
+
+        assertEquals(Optional.of(42L), order.number());
+        assertEquals(Optional.of(50), order.discountAmount());
+        assertEquals(Optional.of("SUPER_10"), order.offerType());
+    }
+
+    @Test
+    void prefersCurrentAttributesOverLegacyOnes() {
+        final var item = new HashMap<String, AttributeValue>();
+        item.put("pk", AttributeValue.fromS("order-1"));
+        item.put("number", AttributeValue.fromN("43"));
+        item.put("discountAmount", AttributeValue.fromN("60"));
+        item.put("discountTotal", AttributeValue.fromN("50"));
+        item.put("offerType", AttributeValue.fromS("PICKUP"));
+        item.put("offerTpe", AttributeValue.fromS("SUPER_10"));
+        item.put("version", AttributeValue.fromN("5"));
+        item.put("createdAt", AttributeValue.fromS(NOW.toString()));
+        item.put("updatedAt", AttributeValue.fromS(NOW.toString()));
+
+        final var order = OrderItems.deserialize(item);
+
+        assertEquals(Optional.of(43L), order.number());
+        assertEquals(Optional.of(60), order.discountAmount());
+        assertEquals(Optional.of("PICKUP"), order.offerType());
+    }
+}
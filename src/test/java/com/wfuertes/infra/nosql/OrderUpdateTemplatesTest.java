@@ -0,0 +1,129 @@
+package com.wfuertes.infra.nosql;
+
+import com.wfuertes.domain.Order;
+import com.wfuertes.domain.OrderUpdate;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderUpdateTemplatesTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2023, 11, 14, 22, 13, 20);
+    private static final List<String> FIELDS = List.of("number", "type", "foodsTotal", "taxes", "discountAmount", "offerAmount", "offerType");
+    // As the builders below set them
+    private static final List<AttributeValue> FIELD_VALUES = List.of(
+            AttributeValue.fromN("42"), AttributeValue.fromS("DELIVERY"), AttributeValue.fromN("1000"), AttributeValue.fromN("100"),
+            AttributeValue.fromN("50"), AttributeValue.fromN("20"), AttributeValue.fromS("SUPER_10"));
+    private static final Pattern PLACEHOLDER = Pattern.compile("[#:]\\w+");
+
+    @Test
+    void upsertSetsExactlyTheChangedFieldsOfEveryCombination() {
+        for (int mask = 0; mask < 1 << FIELDS.size(); mask++) {
+            final var update = OrderUpdate.builder()
+                    .id("order-1")
+                    .number(has(mask, 0) ? 42L : null)
+                    .type(has(mask, 1) ? "DELIVERY" : null)
+                    .foodsTotal(has(mask, 2) ? 1_000 : null)
+                    .taxes(has(mask, 3) ? 100 : null)
+                    .discountAmount(has(mask, 4) ? 50 : null)
+                    .offerAmount(has(mask, 5) ? 20 : null)
+                    .offerType(has(mask, 6) ? "SUPER_10" : null)
+                    .updatedAt(NOW)
+                    .build();
+
+            final var upsert = OrderUpdateTemplates.upsert(update, 3);
+
+            final var expectedValues = fieldValues(mask);
+            expectedValues.put(":updatedAt", AttributeValue.fromS("2023-11-14T22:13:20"));
+            expectedValues.put(":increment", AttributeValue.fromN("3"));
+            assertTemplate(mask, upsert,
+                    List.of("#createdAt = if_not_exists(#createdAt, :updatedAt)", "#updatedAt = :updatedAt"),
+                    " ADD #version :increment",
+                    Set.of("createdAt", "updatedAt", "version"),
+                    expectedValues);
+        }
+    }
+
+    @Test
+    void updateSetsExactlyThePresentFieldsOfEveryCombination() {
+        for (int mask = 0; mask < 1 << FIELDS.size(); mask++) {
+            final var order = Order.builder()
+                    .id("order-1")
+                    .number(has(mask, 0) ? 42L : null)
+                    .type(has(mask, 1) ? "DELIVERY" : null)
+                    .foodsTotal(has(mask, 2) ? 1_000 : null)
+                    .taxes(has(mask, 3) ? 100 : null)
+                    .discountAmount(has(mask, 4) ? 50 : null)
+                    .offerAmount(has(mask, 5) ? 20 : null)
+                    .offerType(has(mask, 6) ? "SUPER_10" : null)
+                    .version(7L)
+                    .createdAt(NOW)
+                    .updatedAt(NOW)
+                    .build();
+
+            final var update = OrderUpdateTemplates.update(order);
+
+            final var expectedValues = fieldValues(mask);
+            expectedValues.put(":updatedAt", AttributeValue.fromS("2023-11-14T22:13:20"));
+            expectedValues.put(":version", AttributeValue.fromN("7"));
+            assertTemplate(mask, update,
+                    List.of("#updatedAt = :updatedAt", "#version = :version"),
+                    "",
+                    Set.of("updatedAt", "version"),
+                    expectedValues);
+        }
+    }
+
+    private static void assertTemplate(int mask,
+                                       OrderUpdateTemplates.Values values,
+                                       List<String> fixedSets,
+                                       String suffix,
+                                       Set<String> fixedNames,
+                                       Map<String, AttributeValue> expectedValues) {
+        final var expression = new StringJoiner(", ", "SET ", suffix);
+        fixedSets.forEach(expression::add);
+        final var names = new HashMap<String, String>();
+        fixedNames.forEach(name -> names.put("#" + name, name));
+        for (int field = 0; field < FIELDS.size(); field++) {
+            if (has(mask, field)) {
+                expression.add("#%s = :%s".formatted(FIELDS.get(field), FIELDS.get(field)));
+                names.put("#" + FIELDS.get(field), FIELDS.get(field));
+            }
+        }
+
+        final var template = values.template();
+        assertEquals(expression.toString(), template.updateExpression(), "mask " + mask);
+        assertEquals(names, template.expressionAttributeNames(), "mask " + mask);
+        assertEquals(expectedValues, values.expressionAttributeValues(), "mask " + mask);
+
+        // DynamoDB rejects names and values the expression does not use
+        final var used = new HashSet<String>();
+        PLACEHOLDER.matcher(template.updateExpression()).results().forEach(match -> used.add(match.group()));
+        final var defined = new HashSet<String>(template.expressionAttributeNames().keySet());
+        defined.addAll(values.expressionAttributeValues().keySet());
+        assertEquals(defined, used, "mask " + mask);
+    }
+
+    private static Map<String, AttributeValue> fieldValues(int mask) {
+        final var values = new HashMap<String, AttributeValue>();
+        for (int field = 0; field < FIELDS.size(); field++) {
+            if (has(mask, field)) {
+                values.put(":" + FIELDS.get(field), FIELD_VALUES.get(field));
+            }
+        }
+        return values;
+    }
+
+    private static boolean has(int mask, int field) {
+        return (mask & (1 << field)) != 0;
+    }
+}